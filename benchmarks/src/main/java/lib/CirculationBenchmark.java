@@ -0,0 +1,40 @@
+package lib;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Borrow + return of one copy through the full core (store, fine engine and search index listeners).
+ * Run with {@code -t N} to see how desks on different titles scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g") @Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+public class CirculationBenchmark {
+    @Param({"1000", "100000", "1000000"}) int entities;
+
+    SyntheticLibrary lib;
+    final AtomicInteger desks = new AtomicInteger();
+
+    @Setup(Level.Trial) public void setup(){ lib = SyntheticLibrary.create(entities); }
+    @TearDown(Level.Trial) public void tearDown(){ lib.delete(); }
+
+    /** One checkout desk: walks its own slice of the catalog so desks do not fight over copies. */
+    @State(Scope.Thread)
+    public static class Desk {
+        int id, next, span, base; long loans; String member;
+        @Setup(Level.Trial) public void setup(CirculationBenchmark b){
+            id = b.desks.getAndIncrement(); span = Math.max(1, b.lib.books/64); base = (id*span) % b.lib.books; member = SyntheticLibrary.memberId(id % b.lib.members);
+        }
+        String book(){ next = (next+1) % span; return SyntheticLibrary.bookId(base+next); }
+        String loanId(){ return "bench-"+id+"-"+(loans++); }
+    }
+
+    @Benchmark public boolean borrowReturn(Desk d){
+        LibraryStore store = lib.core.store;
+        String loanId = d.loanId();
+        return store.borrow(new Loan(loanId, d.book(), d.member)) && store.returnLoan(loanId)!=null;
+    }
+}
@@ -0,0 +1,30 @@
+package lib;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Headless model side of refreshBookList: building the row list and handing it to the JList model. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"}) @Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+public class ListModelBenchmark {
+    @Param({"1000", "100000", "1000000"}) int entities;
+
+    private SyntheticLibrary lib;
+    private final RowListModel<Book> model = new RowListModel<>();
+
+    @Setup(Level.Trial) public void setup(){ lib = SyntheticLibrary.create(entities); }
+    @TearDown(Level.Trial) public void tearDown(){ lib.delete(); }
+
+    /** Unfiltered page: copy the catalog into the model. */
+    @Benchmark public int allBooks(){ model.setRows(new ArrayList<>(lib.core.store.books())); return model.getSize(); }
+
+    /** Filtered page: search, then set the rows. */
+    @Benchmark public int filteredBooks(){ List<Book> rows = lib.core.bookIndex.match("pattern"); model.setRows(rows); return model.getSize(); }
+
+    /** A single store change: locate the row and fire one event. */
+    @Benchmark public int changeOneRow(){ List<Book> rows = model.rows(); if(rows.isEmpty()) allBooks(); Book b = model.getElementAt(model.getSize()/2); model.changed(b); return model.indexOf(b); }
+}
@@ -0,0 +1,31 @@
+package lib;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Primary-key lookups (what findBook/findMember used to scan for). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g") @Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1)
+public class LookupBenchmark {
+    @Param({"1000", "100000", "1000000"}) int entities;
+
+    private SyntheticLibrary lib;
+    private String[] bookIds, memberIds;
+    private int next;
+
+    @Setup(Level.Trial) public void setup(){
+        lib = SyntheticLibrary.create(entities);
+        java.util.Random rnd = new java.util.Random(SyntheticLibrary.SEED);
+        bookIds = new String[4096]; memberIds = new String[4096];
+        for(int i=0; i<bookIds.length; i++){ bookIds[i] = SyntheticLibrary.bookId(rnd.nextInt(lib.books)); memberIds[i] = SyntheticLibrary.memberId(rnd.nextInt(lib.members)); }
+    }
+    @TearDown(Level.Trial) public void tearDown(){ lib.delete(); }
+
+    @Benchmark public Book bookById(){ next = (next+1) & 4095; return lib.core.store.book(bookIds[next]); }
+
+    @Benchmark public Member memberById(){ next = (next+1) & 4095; return lib.core.store.member(memberIds[next]); }
+
+    @Benchmark public int loansOfMember(){ next = (next+1) & 4095; return lib.core.store.loansForMember(memberIds[next]).size(); }
+}
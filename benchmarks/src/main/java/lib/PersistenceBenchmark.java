@@ -0,0 +1,47 @@
+package lib;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Binary snapshot save (write + fsync, what saveData costs) and load (mmap read into a fresh store, what loadData costs). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g") @Warmup(iterations = 3) @Measurement(iterations = 10)
+public class PersistenceBenchmark {
+    @Param({"1000", "100000", "1000000"}) int entities;
+
+    private SyntheticLibrary lib;
+    private LibraryStore.Cut cut;
+    private Path file;
+
+    @Setup(Level.Trial) public void setup() throws IOException {
+        lib = SyntheticLibrary.create(entities);
+        cut = lib.core.store.cut(null);
+        file = lib.dir.resolve("bench.bin");
+        save();
+    }
+    @TearDown(Level.Trial) public void tearDown() throws IOException { Files.deleteIfExists(file); lib.delete(); }
+
+    @Benchmark public void save() throws IOException {
+        try(FileOutputStream fos = new FileOutputStream(file.toFile())){
+            SnapshotFormat.write(fos, 1, cut.books, cut.members, cut.loans);
+            fos.getFD().sync();
+        }
+    }
+
+    /** Snapshot into a bare store (no listeners): the file format and index rebuild only. */
+    @Benchmark public LibraryStore load() throws IOException {
+        LibraryStore store = new LibraryStore();
+        SnapshotFormat.read(file, new LibraryJournal.Target(){
+            public void restore(List<Book> b, List<Member> m, List<Loan> l){ store.restore(b, m, l); }
+            public void addBook(Book b){} public void addMember(Member m){} public void borrow(Loan l){} public void returned(String loanId){}
+        });
+        return store;
+    }
+}
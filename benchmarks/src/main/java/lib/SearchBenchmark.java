@@ -0,0 +1,34 @@
+package lib;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/** Keystroke search: one suggestion query per typed prefix, and the full match a page refresh runs. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g") @Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+    private static final BooleanSupplier NEVER_STALE = () -> false;
+
+    @Param({"1000", "100000", "1000000"}) int entities;
+
+    private SyntheticLibrary lib;
+    private String[] keys;
+    private int next;
+
+    @Setup(Level.Trial) public void setup(){ lib = SyntheticLibrary.create(entities); keys = SyntheticLibrary.keystrokes(); }
+    @TearDown(Level.Trial) public void tearDown(){ lib.delete(); }
+
+    private String key(){ String k = keys[next]; next = (next+1) % keys.length; return k; }
+
+    /** What the suggestion popup asks for on each keystroke (top 20 distinct terms). */
+    @Benchmark public void suggestBooks(Blackhole bh){ bh.consume(lib.core.bookIndex.suggest(key(), 20, NEVER_STALE)); }
+
+    @Benchmark public void suggestMembers(Blackhole bh){ bh.consume(lib.core.memberIndex.suggest(key(), 20, NEVER_STALE)); }
+
+    /** Every matching book, in catalog order, as refreshBookList(query) needs. */
+    @Benchmark public void matchBooks(Blackhole bh){ bh.consume(lib.core.bookIndex.match(key())); }
+}
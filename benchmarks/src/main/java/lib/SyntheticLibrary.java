@@ -0,0 +1,76 @@
+package lib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Deterministic fake libraries for the benchmarks.
+ *
+ * {@code entities} is split 70/20/10 into books, members and open loans. Titles and names are drawn from
+ * small word lists, so search terms repeat the way real catalogs do (shared authors, common title words).
+ */
+final class SyntheticLibrary {
+    static final long SEED = 42;
+    private static final String[] WORDS = {"clean","code","silent","patient","design","patterns","introduction","algorithms","pragmatic","programmer",
+        "head","first","java","effective","rich","poor","atomic","habits","harry","potter","stone","alchemist","power","mind","complete","reference",
+        "sapiens","history","psychology","money","river","garden","night","city","winter","shadow","empire","ocean","machine","memory"};
+    private static final String[] FIRST = {"Aisha","Rohan","Priya","Arjun","Meera","Kabir","Sara","Vikram","Neha","Dev","Anya","Ishaan","Zoya","Kiran","Tara","Omar"};
+    private static final String[] LAST = {"Khan","Verma","Shah","Rao","Iyer","Gupta","Singh","Das","Mehta","Nair","Bose","Patel","Joshi","Kapoor"};
+
+    final int books, members, loans;
+    final LibraryCore core;
+    final Path dir;
+
+    private SyntheticLibrary(int entities){
+        books = Math.max(1, entities*7/10); members = Math.max(1, entities*2/10); loans = Math.max(1, entities - books - members);
+        try { dir = Files.createTempDirectory("library-bench"); } catch(IOException ex){ throw new UncheckedIOException(ex); }
+        core = new LibraryCore(dir.resolve("library_data.bin").toString(), dir.resolve("library_data.ser").toString(), dir.resolve("library_data.journal").toString(), Integer.MAX_VALUE);
+    }
+
+    /** A populated core (store, search indexes, fine engine); nothing is journaled. */
+    static SyntheticLibrary create(int entities){
+        SyntheticLibrary lib = new SyntheticLibrary(entities);
+        lib.fill(new Random(SEED));
+        return lib;
+    }
+
+    static String bookId(int i){ return "B"+i; }
+    static String memberId(int i){ return "M"+i; }
+
+    private void fill(Random rnd){
+        LibraryStore store = core.store;
+        long now = System.currentTimeMillis();
+        store.batch(() -> {
+            for(int i=0; i<books; i++) store.addBook(new Book(bookId(i), title(rnd), name(rnd), 1900+rnd.nextInt(125), 1+rnd.nextInt(4)));
+            for(int i=0; i<members; i++) store.addMember(new Member(memberId(i), name(rnd)));
+            for(int i=0, made=0; made<loans && i<loans*4; i++){
+                if(store.borrow(new Loan("L"+i, bookId(rnd.nextInt(books)), memberId(rnd.nextInt(members)), now - rnd.nextInt(60)*FineEngine.DAY_MS))) made++;
+            }
+        });
+    }
+
+    static String title(Random rnd){
+        int n = 2+rnd.nextInt(3); StringBuilder sb = new StringBuilder();
+        for(int i=0; i<n; i++){ String w = WORDS[rnd.nextInt(WORDS.length)]; if(i>0) sb.append(' '); sb.append(Character.toUpperCase(w.charAt(0))).append(w, 1, w.length()); }
+        return sb.toString();
+    }
+
+    static String name(Random rnd){ return FIRST[rnd.nextInt(FIRST.length)]+" "+LAST[rnd.nextInt(LAST.length)]; }
+
+    /** Query strings as typed: every prefix (length 1..6) of a few title words and names. */
+    static String[] keystrokes(){
+        String[] seeds = {"patterns","algorithms","memory","sapiens","Meera Iyer","B1234"};
+        java.util.List<String> out = new java.util.ArrayList<>();
+        for(String s: seeds) for(int n=1; n<=Math.min(6, s.length()); n++) out.add(s.substring(0, n));
+        return out.toArray(new String[0]);
+    }
+
+    void delete(){
+        core.close();
+        try(var files = Files.list(dir)){ for(Path p: (Iterable<Path>)files::iterator) Files.deleteIfExists(p); Files.deleteIfExists(dir); }
+        catch(IOException ignored){}
+    }
+}
@@ -0,0 +1,46 @@
+package lib;
+
+/**
+ * A catalog title. Identity fields never change; {@code available} is only changed by
+ * {@link LibraryStore} while it holds the lock stripe for this book's id.
+ *
+ * A Book is a flyweight over its fields, which live either in a small record of its own (a book made with
+ * the public constructor, not yet in a store) or in one row of the store's {@link CompactCatalog}. The store
+ * only hands out its own views, one per row, so two references to the same title are the same object.
+ */
+class Book {
+    /** Where the fields of a book live. */
+    interface Source {
+        String id(int row); String title(int row); String author(int row);
+        int year(int row); int total(int row); int available(int row);
+        void setAvailable(int row, int n);
+    }
+
+    final Source src; final int row;
+
+    Book(String id, String t, String a, int y, int tot) { this(new Fields(id, t, a, y, tot), 0); }
+    Book(Source src, int row){ this.src = src; this.row = row; }
+
+    String id(){ return src.id(row); }
+    String title(){ return src.title(row); }
+    String author(){ return src.author(row); }
+    int year(){ return src.year(row); }
+    int total(){ return src.total(row); }
+    int available(){ return src.available(row); }
+    void setAvailable(int n){ src.setAvailable(row, n); }
+
+    @Override public String toString(){ return id()+" "+title(); }
+
+    // a book on its own, before the store copies it into a catalog row
+    private static final class Fields implements Source {
+        final String id, title, author; final int year, total; volatile int available;
+        Fields(String id, String title, String author, int year, int total){ this.id = id; this.title = title; this.author = author; this.year = year; this.total = total; this.available = total; }
+        public String id(int row){ return id; }
+        public String title(int row){ return title; }
+        public String author(int row){ return author; }
+        public int year(int row){ return year; }
+        public int total(int row){ return total; }
+        public int available(int row){ return available; }
+        public void setAvailable(int row, int n){ available = n; }
+    }
+}
@@ -0,0 +1,325 @@
+package lib;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Streaming import of books and members from CSV or JSON Lines.
+ *
+ * One thread reads the file and cuts it into chunks of {@link #CHUNK} records; a pool with one worker per core
+ * parses and validates the chunks; a committer takes the parsed chunks back in file order and adds each one to
+ * the store as a single batch, so every chunk costs one index update, and rows keep their order in the catalog.
+ * How a chunk is committed is up to the caller: {@link LibraryCore} keeps them out of the journal and persists the
+ * whole import with one snapshot at the end. The queue between reader and committer is bounded, so at most a few chunks are
+ * in memory however large the file is.
+ *
+ * CSV needs a header: {@code id,title,author,year,copies} (or {@code total}) for books, {@code id,name} for
+ * members. A field that starts with a quote may contain commas, doubled quotes and line breaks; a quote anywhere
+ * else is an ordinary character. A quoted field still open at the end of the file, or after {@link #MAX_RECORD_LINES}
+ * lines, rejects only the line it started on and reading resumes on the next line. A JSON Lines record is one
+ * line holding a flat object and is a book if it has a "title", otherwise a member.
+ *
+ * Rows that fail validation or whose id is already taken (in the store or earlier in the file) are rejected
+ * and written to {@code <file>.rejects.txt}; the report keeps the first {@link #REJECTS_KEPT} of them.
+ */
+final class BulkImport {
+    static final int CHUNK = 8192, REJECTS_KEPT = 200, MAX_RECORD_LINES = 64;
+
+    /** Called on the committer thread after every chunk. */
+    interface Progress { void update(long bytesRead, long totalBytes, long imported, long rejected); }
+
+    static final class Reject {
+        final long line; final String reason, raw;
+        Reject(long line, String reason, String raw){ this.line = line; this.reason = reason; this.raw = raw; }
+        @Override public String toString(){ return "line "+line+": "+reason+": "+raw; }
+    }
+
+    static final class Report {
+        long books, members, rejected; boolean cancelled; Path rejectsFile;
+        final List<Reject> firstRejects = new ArrayList<>();
+        @Override public String toString(){ return books+" books and "+members+" members imported, "+rejected+" rows rejected"+(cancelled? " (cancelled)" : ""); }
+    }
+
+    private static final class Chunk {
+        final long firstLine; final List<String> records; final long bytesRead;
+        Chunk(long firstLine, List<String> records, long bytesRead){ this.firstLine = firstLine; this.records = records; this.bytesRead = bytesRead; }
+    }
+
+    private static final class Parsed {
+        final List<Object> rows = new ArrayList<>(); final List<Long> lines = new ArrayList<>(); final List<Reject> rejects = new ArrayList<>(); long bytesRead;
+    }
+
+    private static final Future<Parsed> END = CompletableFuture.completedFuture(null);
+
+    private final LibraryStore store;
+    private final int workers;
+    private final Consumer<Runnable> commit; // runs one chunk's store batch
+
+    BulkImport(LibraryStore store){ this(store, Runtime.getRuntime().availableProcessors(), store::batch); }
+    BulkImport(LibraryStore store, int workers){ this(store, workers, store::batch); }
+    BulkImport(LibraryStore store, int workers, Consumer<Runnable> commit){ this.store = store; this.workers = Math.max(1, workers); this.commit = commit; }
+
+    // ---------------- Pipeline ----------------
+    /** Imports {@code file} on the calling thread (plus the parse pool); {@code cancel} stops after the chunk in progress. */
+    Report run(Path file, Progress progress, AtomicBoolean cancel) throws IOException {
+        boolean jsonl = file.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.(jsonl|ndjson)$");
+        long total = Files.size(file);
+        Report report = new Report();
+        report.rejectsFile = file.resolveSibling(file.getFileName()+".rejects.txt");
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> { Thread t = new Thread(r, "library-import"); t.setDaemon(true); return t; });
+        BlockingQueue<Future<Parsed>> inOrder = new ArrayBlockingQueue<>(2*workers); // bounds memory: reader blocks when the committer lags
+        Future<?>[] committer = new Future<?>[1];
+        try(CountingInput counted = new CountingInput(Files.newInputStream(file));
+            BufferedReader in = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8), 1<<16);
+            Writer rejects = Files.newBufferedWriter(report.rejectsFile, StandardCharsets.UTF_8)){
+            ExecutorService commitThread = Executors.newSingleThreadExecutor(r -> { Thread t = new Thread(r, "library-import-commit"); t.setDaemon(true); return t; });
+            committer[0] = commitThread.submit(() -> { commitAll(inOrder, report, rejects, total, progress, cancel); return null; });
+            commitThread.shutdown();
+            try {
+                RecordReader reader = new RecordReader(in, !jsonl);
+                String[] header = null;
+                if(!jsonl){
+                    try { header = splitCsv(reader.next()); }
+                    catch(IllegalArgumentException ex){ throw new IOException("CSV header: "+ex.getMessage()); }
+                    if(header==null) throw new IOException("empty CSV file");
+                }
+                String[] cols = header;
+                while(!cancel.get() && !committer[0].isDone()){
+                    List<String> records = new ArrayList<>(CHUNK);
+                    long first = reader.line+1;
+                    String r;
+                    while(records.size() < CHUNK && (r = reader.next())!=null) records.add(r);
+                    if(records.isEmpty()) break;
+                    Chunk chunk = new Chunk(first, records, counted.count);
+                    if(!enqueue(inOrder, pool.submit(() -> jsonl? parseJsonLines(chunk) : parseCsv(chunk, cols)), committer[0])) break;
+                }
+            } finally { enqueue(inOrder, END, committer[0]); }
+            committer[0].get();
+        } catch(InterruptedException ex){ Thread.currentThread().interrupt(); cancel.set(true); throw new InterruptedIOException("import interrupted"); }
+        catch(ExecutionException ex){ throw ex.getCause() instanceof IOException io? io : new IOException(ex.getCause()); }
+        finally { pool.shutdownNow(); }
+        report.cancelled = cancel.get();
+        if(report.rejected==0) Files.deleteIfExists(report.rejectsFile);
+        return report;
+    }
+
+    // blocks while the queue is full, but gives up once the committer has stopped (failed), so the reader cannot hang
+    private static boolean enqueue(BlockingQueue<Future<Parsed>> q, Future<Parsed> f, Future<?> committer) throws InterruptedException {
+        while(!q.offer(f, 100, TimeUnit.MILLISECONDS)) if(committer.isDone()) return false;
+        return true;
+    }
+
+    // single committer: chunks arrive in file order; a whole chunk is one store batch
+    private void commitAll(BlockingQueue<Future<Parsed>> inOrder, Report report, Writer rejects, long total, Progress progress, AtomicBoolean cancel) throws Exception {
+        for(Future<Parsed> f; (f = inOrder.take())!=END; ){
+            if(cancel.get()){ f.cancel(false); continue; } // keep draining so the reader never blocks
+            Parsed p = f.get();
+            commit.accept(() -> {
+                for(int i=0; i<p.rows.size(); i++){
+                    Object row = p.rows.get(i);
+                    boolean added = row instanceof Book b? store.addBook(b) : store.addMember((Member)row); // rows are valid, so false means the id is taken
+                    if(added){ if(row instanceof Book) report.books++; else report.members++; }
+                    else p.rejects.add(new Reject(p.lines.get(i), "duplicate id", row instanceof Book b? b.id() : ((Member)row).id));
+                }
+            });
+            p.rejects.sort(Comparator.comparingLong(r -> r.line));
+            for(Reject r: p.rejects){
+                rejects.write(r.toString()); rejects.write('\n');
+                if(report.firstRejects.size() < REJECTS_KEPT) report.firstRejects.add(r);
+            }
+            report.rejected += p.rejects.size();
+            if(progress!=null) progress.update(p.bytesRead, total, report.books+report.members, report.rejected);
+        }
+    }
+
+    // one logical record per call: a line, or for CSV several when a quoted field spans line breaks
+    private static final class RecordReader {
+        private final BufferedReader in;
+        private final boolean csv;
+        private final ArrayDeque<String> unread = new ArrayDeque<>();
+        long line; // last line handed out
+
+        RecordReader(BufferedReader in, boolean csv){ this.in = in; this.csv = csv; }
+
+        String next() throws IOException {
+            String s = readLine();
+            if(s==null || !csv || s.indexOf('"')<0 || !openQuote(s)) return s;
+            StringBuilder sb = new StringBuilder(s);
+            List<String> joined = new ArrayList<>();
+            for(String more; joined.size() < MAX_RECORD_LINES-1 && (more = readLine())!=null; ){
+                joined.add(more); sb.append('\n').append(more);
+                if(!openQuote(sb)) return sb.toString();
+            }
+            // never closed: give back the lines after the first, which alone fails to split and is rejected
+            for(int i=joined.size()-1; i>=0; i--) unread.push(joined.get(i));
+            line -= joined.size();
+            return s;
+        }
+
+        private String readLine() throws IOException {
+            String s = unread.isEmpty()? in.readLine() : unread.pop();
+            if(s!=null) line++;
+            return s;
+        }
+    }
+
+    // same state machine as splitCsv: true if the record ends inside a quoted field
+    private static boolean openQuote(CharSequence rec){
+        boolean quoted = false, fieldStart = true;
+        for(int i=0; i<rec.length(); i++){
+            char c = rec.charAt(i);
+            if(quoted){ if(c=='"'){ if(i+1<rec.length() && rec.charAt(i+1)=='"') i++; else quoted = false; } }
+            else if(c=='"' && fieldStart){ quoted = true; fieldStart = false; }
+            else fieldStart = c==',';
+        }
+        return quoted;
+    }
+
+    // ---------------- Parsing (on the pool) ----------------
+    private static Parsed parseCsv(Chunk chunk, String[] header){
+        Parsed p = new Parsed(); p.bytesRead = chunk.bytesRead;
+        Map<String,Integer> col = new HashMap<>();
+        for(int i=0; i<header.length; i++) col.putIfAbsent(header[i].trim().toLowerCase(Locale.ROOT), i);
+        if(!col.containsKey("copies") && col.containsKey("total")) col.put("copies", col.get("total"));
+        long line = chunk.firstLine;
+        for(String rec: chunk.records){
+            long at = line; line += 1 + newlines(rec);
+            if(rec.isBlank()) continue;
+            String[] f;
+            try { f = splitCsv(rec); }
+            catch(IllegalArgumentException ex){ p.rejects.add(new Reject(at, ex.getMessage(), rec)); continue; }
+            Map<String,String> fields = new HashMap<>();
+            for(Map.Entry<String,Integer> e: col.entrySet()) if(e.getValue() < f.length) fields.put(e.getKey(), f[e.getValue()].trim());
+            toRow(fields, at, rec, p);
+        }
+        return p;
+    }
+
+    private static Parsed parseJsonLines(Chunk chunk){
+        Parsed p = new Parsed(); p.bytesRead = chunk.bytesRead;
+        long line = chunk.firstLine;
+        for(String rec: chunk.records){
+            long at = line++;
+            if(rec.isBlank()) continue;
+            Map<String,String> fields;
+            try { fields = parseFlatJson(rec); }
+            catch(IllegalArgumentException ex){ p.rejects.add(new Reject(at, ex.getMessage(), rec)); continue; }
+            toRow(fields, at, rec, p);
+        }
+        return p;
+    }
+
+    // validates one record and turns it into a Book (has a title column/key) or a Member
+    private static void toRow(Map<String,String> f, long line, String raw, Parsed p){
+        String id = f.get("id");
+        if(id==null || id.isEmpty()){ p.rejects.add(new Reject(line, "missing id", raw)); return; }
+        Object row;
+        if(f.containsKey("title")){
+            String title = f.get("title");
+            if(title==null || title.isEmpty()){ p.rejects.add(new Reject(line, "missing title", raw)); return; }
+            int year, copies;
+            try { year = intOr(f.get("year"), 0); copies = intOr(f.containsKey("copies")? f.get("copies") : f.get("total"), 1); }
+            catch(NumberFormatException ex){ p.rejects.add(new Reject(line, "year/copies not a number", raw)); return; }
+            if(copies < 1){ p.rejects.add(new Reject(line, "copies must be at least 1", raw)); return; }
+            row = new Book(id, title, f.getOrDefault("author", ""), year, copies);
+        } else {
+            String name = f.get("name");
+            if(name==null || name.isEmpty()){ p.rejects.add(new Reject(line, "neither a title nor a name", raw)); return; }
+            row = new Member(id, name);
+        }
+        String why = row instanceof Book b? LibraryStore.invalid(b) : LibraryStore.invalid((Member)row); // e.g. a field too long to journal
+        if(why!=null){ p.rejects.add(new Reject(line, why, raw)); return; }
+        p.rows.add(row); p.lines.add(line);
+    }
+
+    private static int intOr(String s, int def){ return s==null || s.isEmpty()? def : Integer.parseInt(s.trim()); }
+
+    private static int newlines(String s){ int n=0; for(int i=s.indexOf('\n'); i>=0; i=s.indexOf('\n', i+1)) n++; return n; }
+
+    // a quote opens a quoted field only as the field's first character; elsewhere it is kept as is
+    static String[] splitCsv(String rec){
+        if(rec==null) return null;
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false, fieldStart = true;
+        for(int i=0; i<rec.length(); i++){
+            char c = rec.charAt(i);
+            if(quoted){
+                if(c=='"'){ if(i+1<rec.length() && rec.charAt(i+1)=='"'){ cur.append('"'); i++; } else quoted = false; }
+                else cur.append(c);
+            } else if(c=='"' && fieldStart){ quoted = true; fieldStart = false; }
+            else if(c==','){ out.add(cur.toString()); cur.setLength(0); fieldStart = true; }
+            else { cur.append(c); fieldStart = false; }
+        }
+        if(quoted) throw new IllegalArgumentException("unterminated quoted field");
+        out.add(cur.toString());
+        return out.toArray(new String[0]);
+    }
+
+    // exactly one flat JSON object: string, number, boolean or null values; keys are lower-cased
+    static Map<String,String> parseFlatJson(String s){
+        Map<String,String> out = new HashMap<>();
+        int[] i = {skip(s, 0)};
+        expect(s, i, '{');
+        if(peek(s, i)=='}'){ i[0]++; return end(s, i, out); }
+        while(true){
+            String key = jsonString(s, i).toLowerCase(Locale.ROOT);
+            expect(s, i, ':');
+            char c = peek(s, i);
+            String value;
+            if(c=='"') value = jsonString(s, i);
+            else {
+                int start = i[0];
+                while(i[0]<s.length() && ",} \t\r\n".indexOf(s.charAt(i[0]))<0) i[0]++;
+                value = s.substring(start, i[0]);
+                if(value.isEmpty() || value.startsWith("{") || value.startsWith("[")) throw new IllegalArgumentException("unsupported value for \""+key+"\"");
+                if(value.equals("null")) value = null;
+            }
+            out.put(key, value);
+            c = peek(s, i); i[0]++;
+            if(c=='}') return end(s, i, out);
+            if(c!=',') throw new IllegalArgumentException("malformed JSON");
+        }
+    }
+
+    private static String jsonString(String s, int[] i){
+        expect(s, i, '"');
+        StringBuilder sb = new StringBuilder();
+        while(i[0] < s.length()){
+            char c = s.charAt(i[0]++);
+            if(c=='"') return sb.toString();
+            if(c!='\\'){ sb.append(c); continue; }
+            if(i[0] >= s.length()) break;
+            char e = s.charAt(i[0]++);
+            switch(e){
+                case 'n' -> sb.append('\n'); case 't' -> sb.append('\t'); case 'r' -> sb.append('\r'); case 'b' -> sb.append('\b'); case 'f' -> sb.append('\f');
+                case 'u' -> { if(i[0]+4 > s.length()) throw new IllegalArgumentException("malformed JSON"); sb.append((char)Integer.parseInt(s.substring(i[0], i[0]+4), 16)); i[0] += 4; }
+                default -> sb.append(e);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static Map<String,String> end(String s, int[] i, Map<String,String> out){
+        if(skip(s, i[0]) < s.length()) throw new IllegalArgumentException("unexpected content after the object");
+        return out;
+    }
+
+    private static void expect(String s, int[] i, char c){ if(peek(s, i)!=c) throw new IllegalArgumentException("malformed JSON"); i[0]++; }
+    private static char peek(String s, int[] i){ i[0] = skip(s, i[0]); return i[0]<s.length()? s.charAt(i[0]) : 0; }
+    private static int skip(String s, int i){ while(i<s.length() && Character.isWhitespace(s.charAt(i))) i++; return i; }
+
+    // counts bytes handed to the decoder, for progress
+    private static final class CountingInput extends FilterInputStream {
+        volatile long count;
+        CountingInput(InputStream in){ super(in); }
+        @Override public int read() throws IOException { int b = super.read(); if(b>=0) count++; return b; }
+        @Override public int read(byte[] b, int off, int len) throws IOException { int n = super.read(b, off, len); if(n>0) count += n; return n; }
+    }
+}
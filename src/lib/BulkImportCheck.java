@@ -0,0 +1,79 @@
+package lib;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks the {@link BulkImport} parsers against inputs with stray, escaped and unbalanced quotes: each case
+ * imports a small file into an empty {@link LibraryStore} and compares the imported titles and the reject count
+ * (and, where given, the rejects' reasons in file order).
+ * Also checks that {@link BulkImport#parseFlatJson} accepts exactly one object.
+ *
+ * Usage: {@code java lib.BulkImportCheck}; prints one line per case and exits with status 1 if any failed.
+ */
+final class BulkImportCheck {
+    private static int failed;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("import-check");
+        try {
+            check(dir, "escaped.jsonl",
+                "{\"id\":\"B1\",\"title\":\"The 5\\\" floppy\"}\n{\"id\":\"B2\",\"title\":\"Second\"}\n{\"id\":\"B3\",\"title\":\"Third\"}\n",
+                new String[][]{{"B1", "The 5\" floppy"}, {"B2", "Second"}, {"B3", "Third"}}, 0);
+            check(dir, "odd-quote.jsonl",
+                "{\"id\":\"B1\",\"title\":\"One\"}\n{\"id\":\"B2\",\"title\":\"broken}\n{\"id\":\"B3\",\"title\":\"Three\"}\n{\"id\":\"B4\",\"title\":\"Four\"} x\n",
+                new String[][]{{"B1", "One"}, {"B3", "Three"}}, 2);
+            check(dir, "stray.csv",
+                "id,title,author,year,copies\nB1,12\" ruler,Acme,2001,1\nB2,Second,Ann,2002,2\nB3,Third,Bo,2003,1\n",
+                new String[][]{{"B1", "12\" ruler"}, {"B2", "Second"}, {"B3", "Third"}}, 0);
+            check(dir, "quoted.csv",
+                "id,title,author,year,copies\nB1,\"Say \"\"hi\"\", world\",Ann,2001,1\nB2,\"Two\nlines\",Bo,2002,1\nB3,Third,Cy,2003,1\n",
+                new String[][]{{"B1", "Say \"hi\", world"}, {"B2", "Two\nlines"}, {"B3", "Third"}}, 0);
+            check(dir, "unterminated.csv",
+                "id,title,author,year,copies\nB1,One,Ann,2001,1\nB2,\"never closed,Bo,2002,1\nB3,Three,Cy,2003,1\nB4,Four,Di,2004,1\n",
+                new String[][]{{"B1", "One"}, {"B3", "Three"}, {"B4", "Four"}}, 1);
+            check(dir, "long-title.csv",
+                "id,title,author,year,copies\nB1,"+"x".repeat(LibraryJournal.MAX_FIELD_BYTES+1)+",Ann,2001,1\nB2,Second,Bo,2002,1\nB2,Again,Cy,2003,1\n",
+                new String[][]{{"B2", "Second"}}, 2, "field over "+LibraryJournal.MAX_FIELD_BYTES+" bytes", "duplicate id");
+
+            json("{\"loanId\":\"x\"}", true);
+            json("  {\"loanId\":\"x\"}  ", true);
+            json("{}", true);
+            json("{\"loanId\":\"x\"} garbage", false);
+            json("{} {}", false);
+            json("{\"loanId\":\"x\"", false);
+        } finally {
+            try(var files = Files.list(dir)){ for(Path p: (Iterable<Path>)files::iterator) Files.deleteIfExists(p); }
+            Files.deleteIfExists(dir);
+        }
+        System.out.println(failed==0? "all cases passed" : failed+" case(s) FAILED");
+        if(failed>0) System.exit(1);
+    }
+
+    private static void check(Path dir, String name, String content, String[][] expected, long rejected, String... reasons) throws Exception {
+        Path file = dir.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LibraryStore store = new LibraryStore();
+        BulkImport.Report r = new BulkImport(store, 2).run(file, null, new AtomicBoolean());
+        boolean ok = r.books==expected.length && r.rejected==rejected;
+        for(String[] e: expected){ Book b = store.book(e[0]); ok &= b!=null && b.title().equals(e[1]); }
+        for(int i=0; i<reasons.length; i++) ok &= i < r.firstRejects.size() && r.firstRejects.get(i).reason.equals(reasons[i]);
+        report(name, ok, r.toString());
+    }
+
+    private static void json(String body, boolean valid){
+        String got;
+        boolean ok;
+        try { Map<String,String> m = BulkImport.parseFlatJson(body); got = "parsed "+m; ok = valid; }
+        catch(IllegalArgumentException ex){ got = "rejected: "+ex.getMessage(); ok = !valid; }
+        report("json "+body, ok, got);
+    }
+
+    private static void report(String name, boolean ok, String detail){
+        if(!ok) failed++;
+        System.out.println((ok? "ok    " : "FAIL  ")+name+" -> "+detail);
+    }
+}
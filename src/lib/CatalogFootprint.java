@@ -0,0 +1,53 @@
+package lib;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures what the catalog costs per title: heap (and direct memory) in use after a full GC, with and
+ * without a {@link LibraryStore} holding {@code n} books. Only the store is built, no search index.
+ *
+ * Titles are three to six words, authors come from a pool of n/8 names and ids look like "B0001234", which
+ * is roughly what an imported catalog looks like. Run with {@code -Dlibrary.offHeapTitles=true} to see the
+ * heap share of the titles move to direct memory.
+ *
+ * Usage: {@code java -Xmx4g lib.CatalogFootprint [titles]}
+ */
+final class CatalogFootprint {
+    private static final String[] WORDS = ("the of and history art war peace java patterns river city night garden silent "
+            + "secret lost last first empire code design data money mind habits stone fire winter light house").split(" ");
+
+    public static void main(String[] args){
+        int n = args.length>0? Integer.parseInt(args[0]) : 1_000_000;
+        long heap0 = usedHeap(), direct0 = direct();
+        LibraryStore store = new LibraryStore();
+        Random rnd = new Random(42);
+        String[] authors = new String[Math.max(1, n/8)];
+        for(int i=0; i<authors.length; i++) authors[i] = "Author "+Integer.toString(i, 36).toUpperCase()+" "+WORDS[rnd.nextInt(WORDS.length)];
+        store.batch(() -> {
+            for(int i=0; i<n; i++){
+                StringBuilder t = new StringBuilder();
+                for(int w = 3+rnd.nextInt(4); w>0; w--){ if(t.length()>0) t.append(' '); t.append(WORDS[rnd.nextInt(WORDS.length)]); }
+                // new String per field, as a parser would produce them
+                store.addBook(new Book(String.format("B%07d", i), t.toString(), new String(authors[rnd.nextInt(authors.length)]), 1900+rnd.nextInt(125), 1+rnd.nextInt(4)));
+            }
+        });
+        long heap = usedHeap() - heap0, direct = direct() - direct0;
+        System.out.printf("titles=%,d offHeapTitles=%s%n", store.books().size(), Boolean.getBoolean("library.offHeapTitles"));
+        System.out.printf("heap   %,d bytes  = %.1f bytes/title%n", heap, heap/(double)n);
+        System.out.printf("direct %,d bytes  = %.1f bytes/title%n", direct, direct/(double)n);
+        if(store.book("B0000000")==null) throw new AssertionError(); // keeps the store reachable up to here
+    }
+
+    private static long usedHeap(){
+        for(int i=0; i<4; i++){ System.gc(); try { Thread.sleep(50); } catch(InterruptedException ex){ Thread.currentThread().interrupt(); } }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long direct(){
+        for(BufferPoolMXBean p: ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) if(p.getName().equals("direct")) return p.getMemoryUsed();
+        return 0;
+    }
+}
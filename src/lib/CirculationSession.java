@@ -0,0 +1,121 @@
+package lib;
+
+import java.util.*;
+
+/**
+ * A run of scanned items checked out to one member, or returned, committed together.
+ *
+ * The desk scans ids into the session ({@link #scan}); nothing touches the store until {@link #commit}.
+ * Commit runs as one store batch: every item is validated against the store as it is at that moment (and
+ * against the items before it in the same session, so the third scan of a title with two copies left
+ * fails), then all valid items are applied. Listeners see one event list, so the batch is one journal
+ * append and one UI update however many items it has. With {@code allOrNothing} a single failed item
+ * leaves the store untouched.
+ *
+ * For returns an item may be a loan id or a book id (what the scanner reads off the copy); a book id
+ * closes that book's oldest open loan, or the member's loan of it if the session has a member.
+ * Sessions are used by one thread.
+ */
+final class CirculationSession {
+    enum Mode { CHECKOUT, RETURN }
+
+    /** One scanned item that could not be applied; {@code position} counts scans from 1. */
+    static final class Failure {
+        final int position; final String item, reason;
+        Failure(int position, String item, String reason){ this.position = position; this.item = item; this.reason = reason; }
+        @Override public String toString(){ return "#"+position+" "+item+": "+reason; }
+    }
+
+    static final class Result {
+        final List<Loan> applied = new ArrayList<>(); // loans opened (checkout) or closed (return)
+        final List<Failure> failures = new ArrayList<>();
+        boolean rolledBack; // allOrNothing and at least one failure
+        @Override public String toString(){ return applied.size()+(rolledBack? " valid, nothing applied" : " applied")+", "+failures.size()+" failed"; }
+    }
+
+    private record Step(int position, String item, Loan loan){}
+
+    private final LibraryStore store;
+    private final Mode mode;
+    private final String memberId;
+    private final List<String> items = new ArrayList<>();
+
+    /** memberId is required for checkouts; for returns it is optional and narrows book ids to that member's loans. */
+    CirculationSession(LibraryStore store, Mode mode, String memberId){
+        this.store = store; this.mode = mode; this.memberId = memberId==null || memberId.isBlank()? null : memberId.trim();
+    }
+
+    /** Adds one scanned id; blank scans are ignored. */
+    void scan(String id){ if(id!=null && !id.isBlank()) items.add(id.trim()); }
+
+    /** Adds every non-blank line of {@code text}. */
+    void scanAll(String text){ for(String line: text.split("\\R")) scan(line); }
+
+    int size(){ return items.size(); }
+
+    // ---------------- Commit ----------------
+    /** Validates and applies the scanned items as one batch; the session can be reused afterwards. */
+    Result commit(boolean allOrNothing){
+        Metrics.Sample timing = Metrics.start(Metrics.Op.CIRCULATION_BATCH);
+        Result r = new Result();
+        List<Step> plan = new ArrayList<>(items.size()); // the loan to open/close for each valid item, in scan order
+        try {
+            store.batch(() -> { // exclusive: nothing changes between validation and apply
+                if(mode==Mode.CHECKOUT) planCheckouts(plan, r); else planReturns(plan, r);
+                r.rolledBack = allOrNothing && !r.failures.isEmpty();
+                if(r.rolledBack){ for(Step s: plan) r.applied.add(s.loan); return; }
+                for(Step s: plan){
+                    boolean ok = mode==Mode.CHECKOUT? store.borrow(s.loan) : store.returnLoan(s.loan.loanId)!=null;
+                    if(ok) r.applied.add(s.loan); else r.failures.add(new Failure(s.position, s.item, "rejected by the store")); // validated above, so not expected
+                }
+                r.failures.sort(Comparator.comparingInt(f -> f.position));
+            });
+        } finally { Metrics.stop(timing); } // a failed batch is timed too
+        items.clear();
+        return r;
+    }
+
+    private void planCheckouts(List<Step> plan, Result r){
+        Member m = store.member(memberId);
+        Map<String,Integer> taken = new HashMap<>(); // copies claimed by earlier items of this session
+        int pos = 0;
+        for(String id: items){
+            pos++;
+            if(m==null){ r.failures.add(new Failure(pos, id, memberId==null? "no member given" : "unknown member "+memberId)); continue; }
+            Book b = store.book(id);
+            if(b==null){ r.failures.add(new Failure(pos, id, "unknown book")); continue; }
+            int claimed = taken.getOrDefault(id, 0);
+            if(b.available() - claimed <= 0){ r.failures.add(new Failure(pos, id, claimed>0? "no copy left after earlier scans" : "no copy available")); continue; }
+            taken.put(id, claimed+1);
+            plan.add(new Step(pos, id, new Loan(UUID.randomUUID().toString(), id, m.id)));
+        }
+    }
+
+    private void planReturns(List<Step> plan, Result r){
+        if(memberId!=null && store.member(memberId)==null){ int pos = 0; for(String id: items) r.failures.add(new Failure(++pos, id, "unknown member "+memberId)); return; }
+        Set<String> closing = new HashSet<>(); // loan ids already planned
+        int pos = 0;
+        for(String id: items){
+            pos++;
+            Loan l = store.loan(id);
+            if(l!=null){
+                if(memberId!=null && !memberId.equals(l.memberId)){ r.failures.add(new Failure(pos, id, "loan belongs to "+l.memberId)); continue; }
+            } else if(store.book(id)!=null){
+                l = oldestOpen(store, id, memberId, closing);
+                if(l==null){ r.failures.add(new Failure(pos, id, memberId==null? "book is not on loan" : "book is not on loan to "+memberId)); continue; }
+            } else { r.failures.add(new Failure(pos, id, "unknown loan or book")); continue; }
+            if(!closing.add(l.loanId)){ r.failures.add(new Failure(pos, id, "scanned twice")); continue; }
+            plan.add(new Step(pos, id, l));
+        }
+    }
+
+    /** The book's oldest open loan not in {@code skip} (and memberId's, unless that is null); null if there is none. */
+    static Loan oldestOpen(LibraryStore store, String bookId, String memberId, Set<String> skip){
+        Loan best = null;
+        for(Loan l: store.loansForBook(bookId)){
+            if(skip.contains(l.loanId) || (memberId!=null && !memberId.equals(l.memberId))) continue;
+            if(best==null || l.issueDate < best.issueDate || (l.issueDate==best.issueDate && l.loanId.compareTo(best.loanId) < 0)) best = l;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,242 @@
+package lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The store's books, kept column-wise instead of as one object graph per title.
+ *
+ * Rows live in fixed pages of {@link #PAGE} entries, one primitive array per field ({@code year},
+ * {@code total}, {@code available}, author, id, title), so a title costs a few array slots instead of a
+ * Book, three Strings, their byte arrays and a hash-map node. Authors are interned in a {@link StringPool}
+ * (they repeat a lot). An id like "B001" (any prefix followed by up to 18 digits) is stored as a pooled
+ * prefix, its digit count and the number; other ids and all titles are UTF-8 bytes in an append-only arena
+ * of 1 MB chunks, on the heap or, with {@code -Dlibrary.offHeapTitles=true}, in direct buffers outside it.
+ * Ids resolve through an open-addressing table of row numbers, so there is no String key per title either.
+ *
+ * {@link Book} objects are flyweight views ({@code (catalog, row)}), one per row, created when the row is.
+ * Rows are only ever appended (the store replaces the whole catalog on restore/clear), and only while the
+ * store's catalog lock is held; reads are lock-free. A row becomes visible to {@link #views()} when it is
+ * appended and findable by id once {@link #publish published}; {@code available} is read and written with
+ * volatile semantics, the other columns never change after the append.
+ */
+final class CompactCatalog implements Book.Source {
+    static final int PAGE_BITS = 12, PAGE = 1 << PAGE_BITS;
+    static final int CHUNK = 1 << 20, MAX_FIELD_BYTES = (1 << 20) - 1;
+    private static final int MAX_DIGITS = 18, MAX_PREFIXES = 1 << 26; // prefix ref << 5 must stay positive
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final class Page {
+        final int[] year = new int[PAGE], total = new int[PAGE], available = new int[PAGE], author = new int[PAGE];
+        final int[] idKey = new int[PAGE]; // prefix ref << 5 | digit count, or -1 when the id is in the arena
+        final long[] idNum = new long[PAGE], title = new long[PAGE]; // number (or arena ref) / arena ref of the title (-1 = null)
+        final Book[] views = new Book[PAGE];
+    }
+
+    private final boolean offHeap;
+    private volatile Page[] pages = new Page[4];
+    private volatile int size;
+    private final StringPool authors = new StringPool(), prefixes = new StringPool();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount, chunkUsed = CHUNK; // writer only
+    private volatile int[] index = new int[64]; // row+1 per slot, 0 = empty; length is a power of two
+    private int indexed; // writer only
+
+    CompactCatalog(boolean offHeap){ this.offHeap = offHeap; }
+
+    // ---------------- Reading ----------------
+    int size(){ return size; }
+
+    /** The book with this id, or null (also for a row appended but not yet published). */
+    Book find(String id){
+        if(id==null) return null;
+        int digits = trailingDigits(id), key = -1; long num = 0;
+        if(digits > 0){
+            int ref = prefixes.find(id.substring(0, id.length()-digits));
+            if(ref < 0) return null; // no stored id has this prefix
+            if(ref < MAX_PREFIXES){ key = ref << 5 | digits; num = Long.parseLong(id, id.length()-digits, id.length(), 10); }
+        }
+        int[] t = index; int mask = t.length-1;
+        for(int i = hash(key, num, id) & mask; ; i = (i+1) & mask){
+            int r = (int)INTS.getAcquire(t, i) - 1;
+            if(r < 0) return null;
+            Page p = page(r); int o = r & (PAGE-1);
+            if(p.idKey[o]==key && (key>=0? p.idNum[o]==num : text(p.idNum[o]).equals(id))) return p.views[o];
+        }
+    }
+
+    /** Views of every row, in the order they were appended. */
+    List<Book> views(){
+        int n = size; Page[] ps = pages;
+        List<Book> out = new ArrayList<>(n);
+        for(int r=0; r<n; r++) out.add(ps[r >>> PAGE_BITS].views[r & (PAGE-1)]);
+        return out;
+    }
+
+    /** Views of rows {@code from} .. {@code from+count-1} (fewer at the end). */
+    List<Book> views(int from, int count){
+        int n = Math.min(size, from + count); Page[] ps = pages;
+        List<Book> out = new ArrayList<>(Math.max(0, n-from));
+        for(int r=from; r<n; r++) out.add(ps[r >>> PAGE_BITS].views[r & (PAGE-1)]);
+        return out;
+    }
+
+    /** Copies of the views whose {@code available} is frozen at this moment (for a consistent snapshot). */
+    List<Book> freeze(){
+        int n = size;
+        int[] avail = new int[n];
+        for(int r=0; r<n; r++) avail[r] = available(r);
+        Book.Source frozen = new Book.Source(){
+            public String id(int row){ return CompactCatalog.this.id(row); }
+            public String title(int row){ return CompactCatalog.this.title(row); }
+            public String author(int row){ return CompactCatalog.this.author(row); }
+            public int year(int row){ return CompactCatalog.this.year(row); }
+            public int total(int row){ return CompactCatalog.this.total(row); }
+            public int available(int row){ return avail[row]; }
+            public void setAvailable(int row, int n){ throw new UnsupportedOperationException("frozen copy"); }
+        };
+        List<Book> out = new ArrayList<>(n);
+        for(int r=0; r<n; r++) out.add(new Book(frozen, r));
+        return out;
+    }
+
+    @Override public String id(int row){
+        Page p = page(row); int o = row & (PAGE-1), key = p.idKey[o];
+        if(key < 0) return text(p.idNum[o]);
+        String digits = Long.toString(p.idNum[o]);
+        int width = key & 31;
+        return prefixes.get(key >>> 5) + "0".repeat(Math.max(0, width-digits.length())) + digits;
+    }
+    @Override public String title(int row){ return text(page(row).title[row & (PAGE-1)]); }
+    @Override public String author(int row){ return authors.get(page(row).author[row & (PAGE-1)]); }
+    @Override public int year(int row){ return page(row).year[row & (PAGE-1)]; }
+    @Override public int total(int row){ return page(row).total[row & (PAGE-1)]; }
+    @Override public int available(int row){ return (int)INTS.getVolatile(page(row).available, row & (PAGE-1)); }
+    @Override public void setAvailable(int row, int n){ INTS.setVolatile(page(row).available, row & (PAGE-1), n); }
+
+    private Page page(int row){ return pages[row >>> PAGE_BITS]; }
+
+    // ---------------- Appending (catalog lock held) ----------------
+    /** False if the id is missing or a field is too long for the arena. */
+    static boolean fits(Book b){ return b.id()!=null && utf8Length(b.id()) <= MAX_FIELD_BYTES && (b.title()==null || utf8Length(b.title()) <= MAX_FIELD_BYTES); }
+
+    /** Copies b into a new row and returns that row's view; not findable by id until {@link #publish}. */
+    Book append(Book b){
+        int r = size;
+        Page[] ps = pages;
+        if((r >>> PAGE_BITS) == ps.length) pages = ps = Arrays.copyOf(ps, ps.length*2);
+        Page p = ps[r >>> PAGE_BITS];
+        if(p == null) ps[r >>> PAGE_BITS] = p = new Page();
+        int o = r & (PAGE-1);
+        String id = b.id();
+        int digits = trailingDigits(id), ref = digits > 0? prefixes.intern(id.substring(0, id.length()-digits)) : -1;
+        if(ref >= 0 && ref < MAX_PREFIXES){ p.idKey[o] = ref << 5 | digits; p.idNum[o] = Long.parseLong(id, id.length()-digits, id.length(), 10); }
+        else { p.idKey[o] = -1; p.idNum[o] = store(id); }
+        p.title[o] = store(b.title()); p.author[o] = authors.intern(b.author());
+        p.year[o] = b.year(); p.total[o] = b.total(); p.available[o] = b.available();
+        Book view = new Book(this, r);
+        p.views[o] = view;
+        size = r+1; // publishes the row to views() and the page/arena writes above
+        return view;
+    }
+
+    /** Makes an appended row findable by id. */
+    void publish(Book view){
+        int[] t = index;
+        if((indexed+1)*2 > t.length){ // keep the load under one half
+            int[] bigger = new int[t.length*2];
+            for(int slot: t) if(slot != 0) insert(bigger, slot-1);
+            index = t = bigger;
+        }
+        insert(t, view.row); indexed++;
+    }
+
+    private void insert(int[] t, int row){
+        Page p = page(row); int o = row & (PAGE-1), mask = t.length-1;
+        int key = p.idKey[o];
+        int i = hash(key, p.idNum[o], key<0? text(p.idNum[o]) : null) & mask;
+        while(t[i] != 0) i = (i+1) & mask;
+        INTS.setRelease(t, i, row+1);
+    }
+
+    // pattern ids hash by (prefix, digits, number); arena ids by their text
+    private static int hash(int key, long num, String id){
+        long h = key >= 0? (num * 0x9E3779B97F4A7C15L) ^ ((long)key << 40) : id.hashCode() * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 29));
+    }
+
+    private static int trailingDigits(String id){
+        int i = id.length();
+        while(i > 0 && id.charAt(i-1) >= '0' && id.charAt(i-1) <= '9') i--;
+        int d = id.length()-i;
+        return d > MAX_DIGITS? 0 : d;
+    }
+
+    // ---------------- Arena ----------------
+    // ref = chunk << 40 | offset << 20 | length; -1 for null
+    private long store(String s){
+        if(s == null) return -1;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if(chunkUsed + bytes.length > CHUNK){
+            ByteBuffer[] cs = chunks;
+            if(chunkCount == cs.length) cs = Arrays.copyOf(cs, cs.length*2);
+            cs[chunkCount++] = offHeap? ByteBuffer.allocateDirect(CHUNK) : ByteBuffer.allocate(CHUNK);
+            chunks = cs; chunkUsed = 0;
+        }
+        int chunk = chunkCount-1, offset = chunkUsed;
+        chunks[chunk].put(offset, bytes);
+        chunkUsed += bytes.length;
+        return (long)chunk << 40 | (long)offset << 20 | bytes.length;
+    }
+
+    private String text(long ref){
+        if(ref < 0) return null;
+        ByteBuffer c = chunks[(int)(ref >>> 40)];
+        int offset = (int)(ref >>> 20) & MAX_FIELD_BYTES, len = (int)ref & MAX_FIELD_BYTES;
+        if(c.hasArray()) return new String(c.array(), c.arrayOffset()+offset, len, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[len]; c.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String s){
+        int n = 0;
+        for(int i=0; i<s.length(); i++){
+            char c = s.charAt(i);
+            n += c < 0x80? 1 : c < 0x800? 2 : Character.isSurrogate(c)? 2 : 3; // a surrogate pair is 4 bytes in total
+        }
+        return n;
+    }
+
+    /** Bytes held by the arena (on or off the heap). */
+    long arenaBytes(){ return (long)chunkCount * CHUNK; }
+
+    // ---------------- String pool ----------------
+    /** Interned strings by small int reference; -1 stands for null. Appended under the catalog lock, read from anywhere. */
+    static final class StringPool {
+        private final Map<String,Integer> refs = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[16];
+        private int count;
+
+        int intern(String s){
+            if(s == null) return -1;
+            Integer r = refs.get(s);
+            if(r != null) return r;
+            String[] v = values;
+            if(count == v.length) v = Arrays.copyOf(v, v.length*2);
+            v[count] = s; values = v;
+            refs.put(s, count);
+            return count++;
+        }
+
+        int find(String s){ Integer r = refs.get(s); return r==null? -1 : r; }
+        String get(int ref){ return ref < 0? null : values[ref]; }
+        int size(){ return refs.size(); }
+    }
+}
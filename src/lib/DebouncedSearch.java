@@ -0,0 +1,49 @@
+package lib;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs the suggestion query of one search field on a background thread.
+ *
+ * Each edit bumps a generation counter and reschedules the query after a short quiet period, so a burst
+ * of keystrokes costs one search. A query that is already running sees itself go stale and stops early,
+ * and results are only published (on the EDT) if no newer edit arrived in the meantime.
+ */
+class DebouncedSearch {
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "library-search"); t.setDaemon(true); return t;
+    });
+
+    private final long delayMs;
+    private final AtomicLong generation = new AtomicLong();
+    private ScheduledFuture<?> pending; // only touched on the EDT
+
+    DebouncedSearch(long delayMs){ this.delayMs = delayMs; }
+
+    /** Schedules {@code search} for {@code query}; {@code publish} runs on the EDT with the results if they are still current. */
+    void submit(String query, BiFunction<String,BooleanSupplier,List<String>> search, Consumer<List<String>> publish){
+        long gen = generation.incrementAndGet();
+        if(pending!=null) pending.cancel(false);
+        BooleanSupplier stale = () -> generation.get()!=gen;
+        pending = EXECUTOR.schedule(() -> {
+            List<String> results;
+            Metrics.Sample timing = Metrics.start(Metrics.Op.SEARCH);
+            try { results = search.apply(query, stale); }
+            catch(RuntimeException ex){ System.err.println("Search failed: "+ex.getMessage()); return; }
+            finally { Metrics.stop(timing); }
+            if(!stale.getAsBoolean()) SwingUtilities.invokeLater(() -> { if(!stale.getAsBoolean()) publish.accept(results); });
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Drops the scheduled query and makes any running one stale. */
+    void cancel(){
+        generation.incrementAndGet();
+        if(pending!=null){ pending.cancel(false); pending = null; }
+    }
+}
@@ -0,0 +1,58 @@
+package lib;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notices when the event dispatch thread stops processing events.
+ *
+ * A daemon thread posts a tiny heartbeat onto the event queue every {@code threshold/4} ms. If the oldest
+ * heartbeat has not run after {@code threshold} ms the EDT is stuck (or the queue is flooded); the EDT's
+ * stack is captured right then and recorded once per stall via {@link Metrics#stall}, so the culprit shows
+ * up in the MBean, in a JFR recording ({@code lib.EdtStall}) and on stderr.
+ */
+final class EdtWatchdog {
+    private static EdtWatchdog running;
+
+    private final long thresholdMs;
+    private final AtomicLong pendingSince = new AtomicLong(); // nanoTime the outstanding heartbeat was posted, 0 if none
+    private volatile Thread edt;
+
+    private EdtWatchdog(long thresholdMs){ this.thresholdMs = thresholdMs; }
+
+    /** Starts the process-wide watchdog (once). */
+    static synchronized void start(long thresholdMs){
+        if(running != null) return;
+        running = new EdtWatchdog(thresholdMs);
+        Thread t = new Thread(running::watch, "library-edt-watchdog"); t.setDaemon(true); t.start();
+    }
+
+    private void watch(){
+        long period = Math.max(10, thresholdMs / 4);
+        boolean reported = false;
+        while(!Thread.currentThread().isInterrupted()){
+            long since = pendingSince.get();
+            if(since == 0){
+                reported = false;
+                long now = System.nanoTime();
+                pendingSince.set(now);
+                SwingUtilities.invokeLater(() -> { edt = Thread.currentThread(); pendingSince.compareAndSet(now, 0); });
+            } else {
+                long blockedMs = (System.nanoTime() - since) / 1_000_000;
+                if(blockedMs >= thresholdMs && !reported && edt != null){
+                    reported = true;
+                    String stack = stackOf(edt);
+                    System.err.println("EDT blocked for "+blockedMs+" ms:\n"+stack);
+                    Metrics.stall(blockedMs, stack);
+                }
+            }
+            try { Thread.sleep(period); } catch(InterruptedException ex){ return; }
+        }
+    }
+
+    private static String stackOf(Thread t){
+        StringBuilder sb = new StringBuilder(t.getName()).append(" (").append(t.getState()).append(")");
+        for(StackTraceElement e: t.getStackTrace()) sb.append("\n\tat ").append(e);
+        return sb.toString();
+    }
+}
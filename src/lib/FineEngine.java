@@ -0,0 +1,108 @@
+package lib;
+
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Overdue and fine calculations backed by an ordered index of open loans.
+ *
+ * Whether a loan is overdue only depends on how many whole days have passed since it was issued, so
+ * loans are kept in a set sorted by issue time: "overdue now" is a head of that set and "due within
+ * N days" a sub-range, both costing time proportional to the loans returned. Loans are added and removed
+ * as the store reports borrows and returns; the set is concurrent because several desks report at once.
+ *
+ * All values for one screen refresh should come from a single {@link Reading}, so every label agrees
+ * on what "now" is.
+ */
+final class FineEngine implements LibraryStore.Listener {
+    static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private final LibraryStore store;
+    private static final Comparator<Loan> BY_ISSUE = Comparator.<Loan>comparingLong(l -> l.issueDate).thenComparing(l -> l.loanId);
+    private final NavigableSet<Loan> byIssue = new ConcurrentSkipListSet<>(BY_ISSUE);
+    private volatile FinePolicy policy;
+
+    FineEngine(LibraryStore store, FinePolicy policy){ this.store = store; this.policy = policy; rebuild(); }
+
+    FinePolicy policy(){ return policy; }
+    void setPolicy(FinePolicy p){ policy = p; }
+
+    // ---------------- Clock readings ----------------
+    /** One clock reading plus the policy in force at that moment. */
+    final class Reading {
+        final long nowMs; final FinePolicy policy;
+        private Reading(long nowMs){ this.nowMs = nowMs; this.policy = FineEngine.this.policy; }
+
+        /** Whole days elapsed since the loan was issued. */
+        int daysSince(Loan l){ return (int)((nowMs - l.issueDate) / DAY_MS); }
+        /** Days left of the loan period (negative once overdue). */
+        int daysLeft(Loan l){ return policy.loanDays() - daysSince(l); }
+        int fine(Loan l){ return policy.fineFor(-daysLeft(l)); }
+    }
+
+    Reading now(){ return new Reading(System.currentTimeMillis()); }
+    Reading at(long nowMs){ return new Reading(nowMs); }
+
+    // ---------------- Queries ----------------
+    /** Loans past their loan period, oldest first. */
+    List<Loan> overdue(Reading r){ return new ArrayList<>(overdueView(r)); }
+
+    /**
+     * One page of {@link #overdue}: skips {@code offset} loans and adds at most {@code limit} to {@code out}, walking
+     * only those entries of the index (plus one). Returns true if more overdue loans follow.
+     */
+    boolean overdue(Reading r, int offset, int limit, List<Loan> out){
+        Iterator<Loan> it = overdueView(r).iterator();
+        for(int i=0; i<offset && it.hasNext(); i++) it.next();
+        for(int i=0; i<limit && it.hasNext(); i++) out.add(it.next());
+        return it.hasNext();
+    }
+
+    // daysSince > loanDays  <=>  issueDate <= now - (loanDays+1) days
+    private NavigableSet<Loan> overdueView(Reading r){ return byIssue.headSet(probe(r.nowMs - (r.policy.loanDays()+1L)*DAY_MS + 1), false); }
+
+    /** Loans not yet overdue that fall due within {@code days} days (days left between 0 and days), soonest first. */
+    List<Loan> dueWithin(Reading r, int days){
+        long oldest = r.nowMs - (r.policy.loanDays()+1L)*DAY_MS, newest = r.nowMs - (long)Math.max(0, r.policy.loanDays()-days)*DAY_MS;
+        if(newest <= oldest) return Collections.emptyList();
+        return new ArrayList<>(byIssue.subSet(probe(oldest + 1), true, probe(newest + 1), false));
+    }
+
+    /** Outstanding fine per member id, over overdue loans only. */
+    Map<String,Integer> finesByMember(Reading r){
+        Map<String,Integer> out = new HashMap<>();
+        for(Loan l: overdue(r)) out.merge(l.memberId, r.fine(l), Integer::sum);
+        return out;
+    }
+
+    /** Outstanding fine of one member, from that member's own loans. */
+    int fineForMember(Reading r, String memberId){
+        int sum = 0;
+        for(Loan l: store.loansForMember(memberId)) sum += r.fine(l);
+        return sum;
+    }
+
+    // sorts before every real loan issued at the same instant ("" is the smallest id)
+    private static Loan probe(long issueDate){ return new Loan("", null, null, issueDate); }
+
+    // ---------------- Index maintenance ----------------
+    @Override public void storeChanged(List<Change> changes){
+        for(Change c: changes){
+            if(c.kind==Kind.RELOAD){ rebuild(); return; }
+            if(c.entity instanceof Loan l){
+                if(c.kind==Kind.INSERT) add(l);
+                else if(c.kind==Kind.DELETE) remove(l);
+            }
+        }
+    }
+
+    // RELOAD is delivered while the store is exclusive, so no add/remove races with this
+    private void rebuild(){ byIssue.clear(); byIssue.addAll(store.loans()); }
+
+    private void add(Loan l){ byIssue.add(l); }
+
+    private void remove(Loan l){ byIssue.remove(l); }
+}
@@ -0,0 +1,23 @@
+package lib;
+
+/**
+ * Loan period and late fee rule used by {@link FineEngine}.
+ */
+interface FinePolicy {
+    /** Days a loan may run before it is overdue. */
+    int loanDays();
+
+    /** Fine (in ₹) for a loan that is {@code overdueDays} past its loan period; 0 when not overdue. */
+    int fineFor(int overdueDays);
+
+    /** Library default: first 30 days free; every day beyond 30 costs ₹2 per day. */
+    FinePolicy DEFAULT = flatRate(30, 2);
+
+    /** A fixed loan period followed by a fixed charge per late day. */
+    static FinePolicy flatRate(int loanDays, int perDay){
+        return new FinePolicy(){
+            public int loanDays(){ return loanDays; }
+            public int fineFor(int overdueDays){ return overdueDays > 0 ? overdueDays * perDay : 0; }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package lib;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a running {@link LibraryHttpApi} with many concurrent kiosks and reports throughput and latency.
+ *
+ * Each kiosk is a virtual thread looping over a mix of 60% title searches, 20% book details, 10% borrows
+ * and 10% returns of loans it opened itself (so the number of copies on the shelf stays level). Search
+ * words are taken from the titles the server returns when the run starts. Latency is measured from send
+ * to the last byte of the response, per operation, and includes time spent queued for a connection.
+ *
+ * Usage: {@code java lib.HttpLoadClient [baseUrl] [kiosks] [seconds]}, e.g.
+ * {@code java lib.HttpLoadClient http://127.0.0.1:8080 2000 20}
+ */
+final class HttpLoadClient {
+    private enum Op { SEARCH, DETAIL, BORROW, RETURN }
+    private static final Pattern ID = Pattern.compile("\"id\":\"((?:[^\"\\\\]|\\\\.)*)\""), TITLE = Pattern.compile("\"title\":\"((?:[^\"\\\\]|\\\\.)*)\""),
+            LOAN_ID = Pattern.compile("\"loanId\":\"([^\"]+)\"");
+
+    private final HttpClient http;
+    private final String base;
+    private final List<String> bookIds = new ArrayList<>(), memberIds = new ArrayList<>(), words = new ArrayList<>();
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    private HttpLoadClient(String base, ExecutorService executor){
+        this.base = base.endsWith("/")? base.substring(0, base.length()-1) : base;
+        this.http = HttpClient.newBuilder().executor(executor).version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length>0? args[0] : "http://127.0.0.1:8080";
+        int kiosks = args.length>1? Integer.parseInt(args[1]) : 1000, seconds = args.length>2? Integer.parseInt(args[2]) : 10;
+        try(ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()){
+            HttpLoadClient c = new HttpLoadClient(base, threads);
+            c.discover();
+            System.out.printf("%s: %d books, %d members, %d search words; %d kiosks for %d s%n", base, c.bookIds.size(), c.memberIds.size(), c.words.size(), kiosks, seconds);
+            c.run(threads, kiosks, seconds);
+        }
+    }
+
+    // ids and title words to build requests from
+    private void discover() throws Exception {
+        String books = get("/api/books?limit="+LibraryHttpApi.MAX_LIMIT).body(), members = get("/api/members?limit="+LibraryHttpApi.MAX_LIMIT).body();
+        for(Matcher m = ID.matcher(books); m.find(); ) bookIds.add(m.group(1));
+        for(Matcher m = ID.matcher(members); m.find(); ) memberIds.add(m.group(1));
+        for(Matcher m = TITLE.matcher(books); m.find(); ) for(String w: m.group(1).split("\\s+")) if(w.length() >= 4 && w.chars().allMatch(Character::isLetter)) words.add(w);
+        if(bookIds.isEmpty() || memberIds.isEmpty()) throw new IllegalStateException("the library at "+base+" needs books and members");
+        if(words.isEmpty()) words.add(bookIds.get(0));
+    }
+
+    private void run(ExecutorService threads, int kiosks, int seconds) throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[][]>> runs = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for(int i=0; i<kiosks; i++) runs.add(threads.submit(() -> kiosk(end)));
+        List<List<long[]>> perOp = new ArrayList<>();
+        for(Op op: Op.values()) perOp.add(new ArrayList<>());
+        for(Future<long[][]> f: runs){ long[][] r = f.get(); for(int i=0; i<r.length; i++) perOp.get(i).add(r[i]); }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+
+        long[][] latencies = new long[perOp.size()][]; // sorted, per op
+        long total = 0;
+        for(int i=0; i<latencies.length; i++){ latencies[i] = perOp.get(i).stream().flatMapToLong(Arrays::stream).filter(v -> v >= 0).sorted().toArray(); total += latencies[i].length; }
+        System.out.printf("%,d requests in %.1f s = %,.0f req/s%n", total, elapsed, total/elapsed);
+        for(Op op: Op.values()){
+            long[] a = latencies[op.ordinal()];
+            if(a.length==0) continue;
+            System.out.printf("%-7s n=%-9d p50=%7.2fms p99=%7.2fms p99.9=%7.2fms max=%7.2fms%n", op, a.length, ms(a, 0.5), ms(a, 0.99), ms(a, 0.999), a[a.length-1] / 1e6);
+        }
+        StringBuilder codes = new StringBuilder("status");
+        for(int s=0; s<statuses.length(); s++) if(statuses.get(s) > 0) codes.append(' ').append(s).append('=').append(statuses.get(s));
+        System.out.println(codes);
+    }
+
+    // one kiosk; returns latency samples per op, -1 filling unused slots
+    private long[][] kiosk(long end){
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long[][] out = new long[Op.values().length][64]; int[] n = new int[out.length];
+        Deque<String> mine = new ArrayDeque<>(); // loans this kiosk opened and has not returned
+        while(System.nanoTime() < end){
+            int dice = rnd.nextInt(10);
+            Op op = dice < 6? Op.SEARCH : dice < 8? Op.DETAIL : dice < 9 || mine.isEmpty()? Op.BORROW : Op.RETURN;
+            long t = System.nanoTime();
+            try {
+                HttpResponse<String> r = switch(op){
+                    case SEARCH -> get("/api/books?limit=20&q="+URLEncoder.encode(words.get(rnd.nextInt(words.size())), StandardCharsets.UTF_8));
+                    case DETAIL -> get("/api/books/"+URLEncoder.encode(bookIds.get(rnd.nextInt(bookIds.size())), StandardCharsets.UTF_8).replace("+", "%20"));
+                    case BORROW -> post("/api/loans", "{\"bookId\":"+json(bookIds.get(rnd.nextInt(bookIds.size())))+",\"memberId\":"+json(memberIds.get(rnd.nextInt(memberIds.size())))+"}");
+                    case RETURN -> post("/api/returns", "{\"loanId\":"+json(mine.poll())+"}");
+                };
+                long took = System.nanoTime() - t;
+                statuses.incrementAndGet(Math.min(r.statusCode(), statuses.length()-1));
+                if(op==Op.BORROW && r.statusCode()==201){ Matcher m = LOAN_ID.matcher(r.body()); if(m.find()) mine.add(m.group(1)); }
+                int i = op.ordinal();
+                if(n[i]==out[i].length) out[i] = Arrays.copyOf(out[i], n[i]*2);
+                out[i][n[i]++] = took;
+            } catch(Exception ex){ statuses.incrementAndGet(0); } // 0 = no response (connection refused/reset)
+        }
+        for(String loanId: mine){ try { post("/api/returns", "{\"loanId\":"+json(loanId)+"}"); } catch(Exception ignored){ } } // leave the shelves as they were
+        for(int i=0; i<out.length; i++){ Arrays.fill(out[i], n[i], out[i].length, -1); }
+        return out;
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(base+path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(base+path)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String json(String s){ StringBuilder sb = new StringBuilder(); LibraryHttpApi.str(sb, s); return sb.toString(); }
+
+    private static double ms(long[] sorted, double q){ return sorted[Math.min(sorted.length-1, (int)(q * sorted.length))] / 1e6; }
+}
@@ -1,5 +1,8 @@
 package lib;
 
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.event.*;
@@ -7,8 +10,13 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.*;
 import java.util.stream.Collectors;
 
@@ -16,50 +24,31 @@ import java.util.stream.Collectors;
 
 public class LibraryAWT extends JFrame {
     // ---------------- Data models ----------------
-    private static final String DATA_FILE_NAME = "library_data.ser";
-
-    static class Book implements Serializable {
-        String id, title, author;
-        int year, total, available;
-        Book(String id, String t, String a, int y, int tot) { this.id = id; this.title = t; this.author = a; this.year = y; this.total = tot; this.available = tot; }
-    }
-
-    static class Member implements Serializable {
-        String id, name;
-        Member(String id, String n) { this.id = id; this.name = n; }
-    }
-
-    static class Loan implements Serializable {
-        String loanId, bookId, memberId;
-        long issueDate; // new: store epoch ms when loan was created
-
-        Loan(String L, String b, String m) {
-            this.loanId = L;
-            this.bookId = b;
-            this.memberId = m;
-            this.issueDate = System.currentTimeMillis();
-        }
-
-        // helper constructor to set custom issueDate (useful for seeding/testing)
-        Loan(String L, String b, String m, long issueDate) {
-            this.loanId = L;
-            this.bookId = b;
-            this.memberId = m;
-            this.issueDate = issueDate;
-        }
-    }
-
-    List<Book> books = new ArrayList<>();
-    List<Member> members = new ArrayList<>();
-    List<Loan> loans = new ArrayList<>();
+    static final String DATA_FILE_NAME = "library_data.bin";
+    static final String LEGACY_DATA_FILE_NAME = "library_data.ser"; // Java-serialized store, migrated on first load
+    static final String JOURNAL_FILE_NAME = "library_data.journal";
+    static final int SNAPSHOT_EVERY = 500; // journal records between full snapshots
+    private static final int DASHBOARD_TICK_MS = 1000; // counters are O(1) to read, so the Home page simply re-reads them every tick
+    private static final long EDT_STALL_MS = 250; // event queue blocked this long is logged with the EDT stack
+
+    final LibraryCore core = new LibraryCore(DATA_FILE_NAME, LEGACY_DATA_FILE_NAME, JOURNAL_FILE_NAME, SNAPSHOT_EVERY);
+    final LibraryStore store = core.store;
+    final FineEngine fines = core.fines;
+    final SearchIndex<Book> bookIndex = core.bookIndex;
+    final SearchIndex<Member> memberIndex = core.memberIndex;
+    final SearchIndex<Loan> loanIndex = core.loanIndex;
 
     // ---------------- UI shared ----------------
-    private final Color CARD = new Color(255,255,255);
-    private final Color ACCENT = new Color(232,106,87);
-    private final Color ACCENT_SOFT = new Color(245,150,128);
-    private final Color FG = new Color(40,40,45);
-    private final Color MUTED = new Color(120,120,125);
-    private final int RADIUS = 14;
+    // shared colour constants; fonts come from RenderCache.font, gradients/cards/badges are pre-rendered there
+    private static final Color CARD = new Color(255,255,255);
+    private static final Color ACCENT = new Color(232,106,87);
+    private static final Color ACCENT_SOFT = new Color(245,150,128);
+    private static final Color FG = new Color(40,40,45);
+    private static final Color MUTED = new Color(120,120,125);
+    private static final Color SAFE = new Color(0,120,0);
+    private static final Color DIALOG_BG = new Color(255,245,236), BUTTON_BORDER = new Color(220,210,205);
+    private static final Color PAGE_FROM = new Color(255,246,239), PAGE_TO = new Color(250,212,192), HOME_FROM = new Color(255,248,240), HOME_TO = new Color(245,210,195);
+    private static final int RADIUS = 14;
 
     CardLayout cardLayout = new CardLayout();
     JPanel mainPanel = new JPanel(cardLayout);
@@ -69,7 +58,24 @@ public class LibraryAWT extends JFrame {
     private transient DefaultListModel<String> bookSugModel, memberSugModel, loanSugModel;
     private transient JList<String> bookSugList, memberSugList, loanSugList;
     private transient JPopupMenu bookPopup, memberPopup, loanPopup;
-    private transient JPanel bookListPanel, memberListPanel, loanListPanel;
+    private transient RowListModel<Book> bookRows; private transient RowListModel<Member> memberRows; private transient RowListModel<Loan> loanRows;
+    private transient JList<Book> bookCardList; private transient JList<Member> memberCardList; private transient JList<Loan> loanCardList;
+    private transient JScrollPane bookScroll, memberScroll, loanScroll;
+    private transient Component bookEmpty, memberEmpty, loanEmpty;
+    private transient String bookQuery, memberQuery, loanQuery; // active filter per page, null when showing everything
+    private final long constructedNanos = System.nanoTime();
+    private transient boolean firstPaintSeen, loaded; // EDT only
+    private final Set<String> builtPages = new HashSet<>(); // EDT only: pages other than Home built so far
+    private transient JButton[] homeNav; private transient JPanel loadingPanel; private transient JLabel loadingStatus;
+    private transient boolean importing; // pages ignore store changes during a bulk import and refresh once at the end
+    private transient javax.swing.Timer dashboardTimer; // Home dashboard tick; stopped in dispose()
+    private transient FineEngine.Reading loanClock = fines.now(); // one clock reading per loan-page refresh
+    private final Queue<List<Change>> pendingChanges = new ConcurrentLinkedQueue<>(); // store changes from other threads, waiting for the EDT
+    private final AtomicBoolean drainQueued = new AtomicBoolean(); // true while a drainChanges task is queued on the EDT
+    private static final int ROW_EVENTS_PER_REFRESH = 2000; // a larger batch of store changes refreshes the pages instead of patching rows
+    private static final String HOVER_KEY = "cardList.hoverIndex";
+    private static final int SUGGESTION_LIMIT = 20;
+    private static final long SUGGESTION_DELAY_MS = 120;
 
     public LibraryAWT(){
         super("Library Management System");
@@ -80,17 +86,67 @@ public class LibraryAWT extends JFrame {
         buildPages();            // add pages to mainPanel
         add(mainPanel);
 
-        if (!loadData()) { seedSampleData(); saveData(); } // load or seed+save
-
-        refreshAll();
-        cardLayout.show(mainPanel, "Home");
+        store.addListener(this::showChangesOnEdt);
+        Metrics.registerMBean(); EdtWatchdog.start(EDT_STALL_MS);
+        showPage("Home");
         setVisible(true);
+        loadInBackground(); // the window is up before the store is read
+    }
+
+    // the dashboard timer would otherwise keep firing (and keep the frame reachable) after the window is gone
+    @Override public void dispose(){
+        if(dashboardTimer!=null) dashboardTimer.stop();
+        super.dispose();
+    }
+
+    // the first paint of the frame, reported once
+    @Override public void paint(Graphics g){
+        super.paint(g);
+        if(!firstPaintSeen){ firstPaintSeen = true; reportStartup("first paint"); }
+    }
+
+    private void reportStartup(String phase){
+        long sinceJvm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime(), sinceWindow = (System.nanoTime() - constructedNanos) / 1_000_000;
+        Metrics.startup(phase, sinceJvm);
+        System.out.println("Startup: "+phase+" "+sinceJvm+" ms after JVM start ("+sinceWindow+" ms after the window was created)");
+    }
+
+    // load or seed+save off the EDT; Home shows progress and its page buttons stay disabled until the store is in place
+    private void loadInBackground(){
+        Thread t = new Thread(() -> {
+            String failure = null, apiFailure = null;
+            try {
+                if (!core.load()) { seed(); saveData(); }
+                else if (core.migrationPending()) saveData(); // one-time rewrite of the legacy .ser as a binary snapshot
+                core.startJournal(); // replayed records must not be journaled again
+            } catch(RuntimeException ex){ failure = String.valueOf(ex.getMessage()!=null? ex.getMessage() : ex); }
+            if(failure==null){
+                // from here on exit must flush the commit window, whatever happens to the HTTP API; it stops taking requests first
+                AtomicReference<LibraryHttpApi> api = new AtomicReference<>();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> { LibraryHttpApi a = api.get(); if(a!=null) a.stop(); core.close(); }, "library-shutdown"));
+                try { api.set(LibraryHttpApi.startIfConfigured(core)); } // kiosks share this store from here on
+                catch(IOException | RuntimeException ex){ apiFailure = String.valueOf(ex.getMessage()!=null? ex.getMessage() : ex); System.err.println("HTTP API not started: "+apiFailure); }
+            }
+            String msg = failure, apiMsg = apiFailure;
+            SwingUtilities.invokeLater(() -> {
+                if(msg!=null){ loadingStatus.setText("Could not load the library: "+msg); return; }
+                loaded = true; loadingPanel.setVisible(false); for(JButton b: homeNav) b.setEnabled(true);
+                reportStartup("data ready");
+                if(apiMsg!=null) JOptionPane.showMessageDialog(this, "The library is loaded, but the HTTP API could not be started:\n"+apiMsg, "HTTP API", JOptionPane.WARNING_MESSAGE);
+            });
+        }, "library-load");
+        t.setDaemon(true); t.start();
     }
 
     // ---------------- Initialization helpers ----------------
     private void initTransientUI(){
         bookSearch = new JTextField(); memberSearch = new JTextField(); loanSearch = new JTextField();
-        bookListPanel = createListContainer(); memberListPanel = createListContainer(); loanListPanel = createListContainer();
+        bookRows = new RowListModel<>(); memberRows = new RowListModel<>(); loanRows = new RowListModel<>();
+        bookCardList = createCardList(bookRows, new BookCardRenderer(), new Book("B000","Title","Author",2000,1), 110, this::showBookDetail);
+        memberCardList = createCardList(memberRows, new MemberCardRenderer(), new Member("M00","Name"), 100, this::showMemberDetail);
+        loanCardList = createCardList(loanRows, new LoanCardRenderer(), new Loan("L0","B000","M00"), 130, this::showLoanDetail);
+        bookScroll = createListScroll(bookCardList); memberScroll = createListScroll(memberCardList); loanScroll = createListScroll(loanCardList);
+        bookEmpty = emptyLabel("No books found."); memberEmpty = emptyLabel("No members found."); loanEmpty = emptyLabel("No loans found.");
 
         bookSugModel = new DefaultListModel<>(); memberSugModel = new DefaultListModel<>(); loanSugModel = new DefaultListModel<>();
         bookSugList = new JList<>(bookSugModel); memberSugList = new JList<>(memberSugModel); loanSugList = new JList<>(loanSugModel);
@@ -98,71 +154,64 @@ public class LibraryAWT extends JFrame {
         bookPopup = new JPopupMenu(); memberPopup = new JPopupMenu(); loanPopup = new JPopupMenu();
         addPopupScroll(bookPopup, bookSugList); addPopupScroll(memberPopup, memberSugList); addPopupScroll(loanPopup, loanSugList);
 
-        // wire suggestion behavior (title/author/id patterns reused)
-        makeSuggestion(bookSearch, bookSugModel, bookSugList, bookPopup, q -> {
-            LinkedHashSet<String> s = new LinkedHashSet<>();
-            for (Book b: books) {
-                if (contains(b.title,q)) s.add(b.title);
-                if (contains(b.author,q)) s.add(b.author);
-                if (contains(b.id,q)) s.add(b.id);
-            }
-            return s;
-        }, sel -> { bookSearch.setText(sel); refreshBookList(sel); });
-
-        makeSuggestion(memberSearch, memberSugModel, memberSugList, memberPopup, q -> {
-            LinkedHashSet<String> s = new LinkedHashSet<>();
-            for (Member m: members) { if (contains(m.name,q)) s.add(m.name); if (contains(m.id,q)) s.add(m.id); }
-            return s;
-        }, sel -> { memberSearch.setText(sel); refreshMemberList(sel); });
-
-        makeSuggestion(loanSearch, loanSugModel, loanSugList, loanPopup, q -> {
-            LinkedHashSet<String> s = new LinkedHashSet<>();
-            for (Loan l: loans) { if (contains(l.loanId,q)) s.add(l.loanId); if (contains(l.bookId,q)) s.add(l.bookId); if (contains(l.memberId,q)) s.add(l.memberId); }
-            return s;
-        }, sel -> { loanSearch.setText(sel); refreshLoanList(sel); });
+        // wire suggestion behavior; queries run against the search indexes off the EDT
+        makeSuggestion(bookSearch, bookSugModel, bookSugList, bookPopup, (q, stale) -> bookIndex.suggest(q, SUGGESTION_LIMIT, stale),
+                sel -> { bookSearch.setText(sel); refreshBookList(sel); });
+        makeSuggestion(memberSearch, memberSugModel, memberSugList, memberPopup, (q, stale) -> memberIndex.suggest(q, SUGGESTION_LIMIT, stale),
+                sel -> { memberSearch.setText(sel); refreshMemberList(sel); });
+        makeSuggestion(loanSearch, loanSugModel, loanSugList, loanPopup, (q, stale) -> loanIndex.suggest(q, SUGGESTION_LIMIT, stale),
+                sel -> { loanSearch.setText(sel); refreshLoanList(sel); });
     }
 
     private void addPopupScroll(JPopupMenu popup, JList<String> list){
         JScrollPane sp = new JScrollPane(list); sp.setBorder(null); sp.setPreferredSize(new Dimension(300,140)); popup.add(sp); popup.setFocusable(false);
     }
 
-    private boolean contains(String s, String q){ return s!=null && q!=null && s.toLowerCase().contains(q); }
-
     // create suggestion wiring: document listener + click + keys
     private void makeSuggestion(JTextField field, DefaultListModel<String> model, JList<String> list, JPopupMenu popup,
-                                Function<String,LinkedHashSet<String>> source, Consumer<String> onSelect){
+                                BiFunction<String,BooleanSupplier,List<String>> source, Consumer<String> onSelect){
+        DebouncedSearch search = new DebouncedSearch(SUGGESTION_DELAY_MS);
         field.getDocument().addDocumentListener(new DocumentListener(){
             public void insertUpdate(DocumentEvent e){ update(); } public void removeUpdate(DocumentEvent e){ update(); } public void changedUpdate(DocumentEvent e){ update(); }
             private void update(){
-                SwingUtilities.invokeLater(() -> {
-                    String q = field.getText().trim().toLowerCase();
-                    model.clear();
-                    if(q.isEmpty()){ popup.setVisible(false); return; }
-                    int c=0;
-                    for(String s: source.apply(q)){ model.addElement(s); if(++c>=20) break; }
-                    if(model.isEmpty()) popup.setVisible(false); else { list.setSelectedIndex(0); if(!popup.isVisible()) popup.show(field,0,field.getHeight()); }
+                String q = field.getText().trim();
+                if(q.isEmpty()){ search.cancel(); model.clear(); popup.setVisible(false); return; }
+                search.submit(q, source, results -> {
+                    model.clear(); for(String s: results) model.addElement(s);
+                    if(model.isEmpty()) popup.setVisible(false); else { list.setSelectedIndex(0); if(!popup.isVisible() && field.isShowing()) popup.show(field,0,field.getHeight()); }
                 });
             }
         });
 
-        list.addMouseListener(new MouseAdapter(){ @Override public void mouseClicked(MouseEvent e){ if(list.getSelectedValue()!=null){ onSelect.accept(list.getSelectedValue()); popup.setVisible(false);} }});
+        // selecting rewrites the field text; cancel afterwards so that edit does not reopen the popup
+        list.addMouseListener(new MouseAdapter(){ @Override public void mouseClicked(MouseEvent e){ if(list.getSelectedValue()!=null){ onSelect.accept(list.getSelectedValue()); search.cancel(); popup.setVisible(false);} }});
 
         field.addKeyListener(new KeyAdapter(){ @Override public void keyPressed(KeyEvent e){
-            if(e.getKeyCode()==KeyEvent.VK_ENTER){ String q=field.getText().trim(); popup.setVisible(false); if(q.isEmpty()) { refreshAll(); } else { onSelect.accept(q); } }
-            else if(e.getKeyCode()==KeyEvent.VK_ESCAPE) popup.setVisible(false);
+            if(e.getKeyCode()==KeyEvent.VK_ENTER){ String q=field.getText().trim(); search.cancel(); popup.setVisible(false); if(q.isEmpty()) { refreshAll(); } else { onSelect.accept(q); } }
+            else if(e.getKeyCode()==KeyEvent.VK_ESCAPE){ search.cancel(); popup.setVisible(false); }
         }});
     }
 
     // ---------------- Build pages ----------------
+    // only Home is built up front; the other pages are built and filled the first time they are shown
     private void buildPages(){
         mainPanel.add(createHomePage(),"Home");
-        mainPanel.add(createBooksPage(),"Books");
-        mainPanel.add(createMembersPage(),"Members");
-        mainPanel.add(createLoansPage(),"Loans");
+    }
+
+    private void showPage(String name){
+        if(!name.equals("Home") && builtPages.add(name)){
+            switch(name){
+                case "Books" -> { mainPanel.add(createBooksPage(), name); refreshBookList(null); }
+                case "Members" -> { mainPanel.add(createMembersPage(), name); refreshMemberList(null); }
+                case "Loans" -> { mainPanel.add(createLoansPage(), name); refreshLoanList(null); }
+                default -> throw new IllegalArgumentException(name);
+            }
+        }
+        cardLayout.show(mainPanel, name);
     }
 
     private JPanel gradientPanel(){
-        return new JPanel(){ protected void paintComponent(Graphics g){ super.paintComponent(g); Graphics2D g2=(Graphics2D)g.create(); int w=getWidth(), h=getHeight(); GradientPaint gp=new GradientPaint(0,0,new Color(255,246,239), w,h,new Color(250,212,192)); g2.setPaint(gp); g2.fillRect(0,0,w,h); g2.dispose(); } };
+        return new JPanel(){ protected void paintComponent(Graphics g){ super.paintComponent(g); RenderCache.gradient(g, getWidth(), getHeight(), PAGE_FROM, PAGE_TO); } };
     }
 
     private JPanel createHomePage(){
@@ -172,80 +221,111 @@ public class LibraryAWT extends JFrame {
         JPanel center = new JPanel(new GridBagLayout()); center.setOpaque(false);
         GridBagConstraints gc = new GridBagConstraints(); gc.insets = new Insets(16,16,16,16);
         JButton bbtn = homeIconButton("Books","📖"), mbtn = homeIconButton("Members","👥"), lbtn = homeIconButton("Loans","💳");
-        bbtn.addActionListener(e->cardLayout.show(mainPanel,"Books")); mbtn.addActionListener(e->cardLayout.show(mainPanel,"Members")); lbtn.addActionListener(e->cardLayout.show(mainPanel,"Loans"));
+        bbtn.addActionListener(e->showPage("Books")); mbtn.addActionListener(e->showPage("Members")); lbtn.addActionListener(e->showPage("Loans"));
+        homeNav = new JButton[]{bbtn, mbtn, lbtn}; for(JButton b: homeNav) b.setEnabled(loaded);
         gc.gridx=0; center.add(bbtn,gc); gc.gridx=1; center.add(mbtn,gc); gc.gridx=2; center.add(lbtn,gc);
-        page.add(center, BorderLayout.CENTER); return page;
+        loadingStatus = new JLabel("Loading library…", JLabel.CENTER); loadingStatus.setForeground(MUTED); loadingStatus.setFont(RenderCache.font("SansSerif",Font.PLAIN,13));
+        JProgressBar bar = new JProgressBar(); bar.setIndeterminate(true); bar.setPreferredSize(new Dimension(260,8)); // load is one snapshot read plus the journal tail, no useful fraction to show
+        loadingPanel = new JPanel(new BorderLayout(0,6)); loadingPanel.setOpaque(false); loadingPanel.setBorder(new EmptyBorder(0,0,14,0));
+        JPanel barWrap = new JPanel(new FlowLayout(FlowLayout.CENTER,0,0)); barWrap.setOpaque(false); barWrap.add(bar);
+        loadingPanel.add(loadingStatus, BorderLayout.NORTH); loadingPanel.add(barWrap, BorderLayout.CENTER); loadingPanel.setVisible(!loaded);
+        JPanel south = new JPanel(new BorderLayout()); south.setOpaque(false); south.add(loadingPanel, BorderLayout.NORTH); south.add(createDashboard(), BorderLayout.CENTER);
+        page.add(center, BorderLayout.CENTER); page.add(south, BorderLayout.SOUTH); return page;
+    }
+
+    // live figures from core.stats: reading them is O(1) for the counters and a few day buckets for overdue/fines
+    private JPanel createDashboard(){
+        JPanel dash = new JPanel(new GridLayout(1,0,12,0)){ protected void paintComponent(Graphics g){ RenderCache.card(g, getWidth(), getHeight(), CARD, RADIUS); } };
+        dash.setOpaque(false); dash.setBorder(new EmptyBorder(14,18,24,28));
+        String[] names = {"Titles","Copies on shelf","On loan","Members","Overdue","Fines outstanding"};
+        JLabel[] values = new JLabel[names.length];
+        for(int i=0; i<names.length; i++){
+            JPanel cell = new JPanel(new BorderLayout()); cell.setOpaque(false);
+            JLabel name = new JLabel(names[i]); name.setForeground(MUTED); name.setFont(RenderCache.font("SansSerif",Font.PLAIN,12));
+            values[i] = new JLabel("–"); values[i].setForeground(FG); values[i].setFont(RenderCache.font("SansSerif",Font.BOLD,22));
+            cell.add(name, BorderLayout.NORTH); cell.add(values[i], BorderLayout.CENTER); dash.add(cell);
+        }
+        JLabel asOf = new JLabel(); asOf.setForeground(MUTED); asOf.setFont(RenderCache.font("SansSerif",Font.PLAIN,11));
+        JPanel wrap = new JPanel(new BorderLayout()); wrap.setOpaque(false); wrap.add(dash, BorderLayout.CENTER); wrap.add(asOf, BorderLayout.SOUTH);
+        java.text.SimpleDateFormat time = new java.text.SimpleDateFormat("HH:mm");
+        Runnable update = () -> {
+            if(!wrap.isShowing()) return;
+            LibraryStats.Reading r = core.stats.read(System.currentTimeMillis());
+            values[0].setText(String.format("%,d", r.titles)); values[1].setText(String.format("%,d", r.onShelf())); values[2].setText(String.format("%,d", r.openLoans));
+            values[3].setText(String.format("%,d", r.members)); values[4].setText(String.format("%,d", r.overdueLoans)); values[5].setText(String.format("₹%,d", r.finesOutstanding));
+            values[4].setForeground(r.overdueLoans>0? Color.RED : FG); values[5].setForeground(r.finesOutstanding>0? Color.RED : FG);
+            asOf.setText("  Overdue and fines as of "+time.format(new Date(r.atMs)));
+        };
+        if(dashboardTimer!=null) dashboardTimer.stop();
+        dashboardTimer = new javax.swing.Timer(DASHBOARD_TICK_MS, e -> update.run()); // the tick also picks up store changes
+        dashboardTimer.start();
+        wrap.addHierarchyListener(e -> { if((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED)!=0) update.run(); });
+        return wrap;
     }
 
     private JPanel createBooksPage(){
         JPanel page = gradientPanel(); page.setLayout(new BorderLayout()); page.setBorder(new EmptyBorder(14,14,14,14));
-        JLabel title = new JLabel("📖 Books"); title.setForeground(FG); title.setFont(new Font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
+        JLabel title = new JLabel("📖 Books"); title.setForeground(FG); title.setFont(RenderCache.font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
 
         JPanel top = new JPanel(new BorderLayout()); top.setOpaque(false);
         JPanel leftActions = new JPanel(new FlowLayout(FlowLayout.LEFT,10,10)); leftActions.setOpaque(false);
-        JButton addBook = actionButton("➕ Add Book"), home = actionButton("⬅ Home"); addBook.addActionListener(e->addBookDialog()); home.addActionListener(e->cardLayout.show(mainPanel,"Home"));
-        leftActions.add(addBook); leftActions.add(home); top.add(leftActions, BorderLayout.WEST);
+        JButton addBook = actionButton("➕ Add Book"), importBtn = actionButton("📂 Import"), home = actionButton("⬅ Home"); addBook.addActionListener(e->addBookDialog()); importBtn.addActionListener(e->importDialog()); home.addActionListener(e->showPage("Home"));
+        leftActions.add(addBook); leftActions.add(importBtn); leftActions.add(home); top.add(leftActions, BorderLayout.WEST);
 
         JPanel searchWrap = new JPanel(new FlowLayout(FlowLayout.RIGHT,6,8)); searchWrap.setOpaque(false);
         JLabel sLabel = new JLabel("Search:"); sLabel.setForeground(MUTED); searchWrap.add(sLabel); bookSearch.setPreferredSize(new Dimension(280,28)); searchWrap.add(bookSearch);
         top.add(searchWrap, BorderLayout.EAST);
         page.add(top, BorderLayout.PAGE_START);
 
-        JScrollPane scroll = new JScrollPane(bookListPanel); scroll.setOpaque(false); scroll.getViewport().setOpaque(false); scroll.setBorder(null);
-        page.add(scroll, BorderLayout.CENTER);
+        page.add(bookScroll, BorderLayout.CENTER);
         return page;
     }
 
     private JPanel createMembersPage(){
         JPanel page = gradientPanel(); page.setLayout(new BorderLayout()); page.setBorder(new EmptyBorder(14,14,14,14));
-        JLabel title = new JLabel("👥 Members"); title.setForeground(FG); title.setFont(new Font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
+        JLabel title = new JLabel("👥 Members"); title.setForeground(FG); title.setFont(RenderCache.font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
 
         JPanel top = new JPanel(new BorderLayout()); top.setOpaque(false);
         JPanel left = new JPanel(new FlowLayout(FlowLayout.LEFT,10,10)); left.setOpaque(false);
-        JButton addMember = actionButton("➕ Add Member"), home = actionButton("⬅ Home"); addMember.addActionListener(e->addMemberDialog()); home.addActionListener(e->cardLayout.show(mainPanel,"Home"));
-        left.add(addMember); left.add(home); top.add(left, BorderLayout.WEST);
+        JButton addMember = actionButton("➕ Add Member"), importBtn = actionButton("📂 Import"), home = actionButton("⬅ Home"); addMember.addActionListener(e->addMemberDialog()); importBtn.addActionListener(e->importDialog()); home.addActionListener(e->showPage("Home"));
+        left.add(addMember); left.add(importBtn); left.add(home); top.add(left, BorderLayout.WEST);
 
         JPanel searchWrap = new JPanel(new FlowLayout(FlowLayout.RIGHT,6,8)); searchWrap.setOpaque(false);
         JLabel sLabel = new JLabel("Search:"); sLabel.setForeground(MUTED); searchWrap.add(sLabel); memberSearch.setPreferredSize(new Dimension(280,28)); searchWrap.add(memberSearch);
         top.add(searchWrap, BorderLayout.EAST);
         page.add(top, BorderLayout.PAGE_START);
 
-        JScrollPane scroll = new JScrollPane(memberListPanel); scroll.setOpaque(false); scroll.getViewport().setOpaque(false); scroll.setBorder(null);
-        page.add(scroll, BorderLayout.CENTER);
+        page.add(memberScroll, BorderLayout.CENTER);
         return page;
     }
 
     private JPanel createLoansPage(){
         JPanel page = gradientPanel(); page.setLayout(new BorderLayout()); page.setBorder(new EmptyBorder(14,14,14,14));
-        JLabel title = new JLabel("💳 Loans"); title.setForeground(FG); title.setFont(new Font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
+        JLabel title = new JLabel("💳 Loans"); title.setForeground(FG); title.setFont(RenderCache.font("Serif",Font.BOLD,26)); page.add(title, BorderLayout.NORTH);
 
         JPanel top = new JPanel(new BorderLayout()); top.setOpaque(false);
         JPanel left = new JPanel(new FlowLayout(FlowLayout.LEFT,10,10)); left.setOpaque(false);
-        JButton borrow = actionButton("📥 Borrow Book"), ret = actionButton("📤 Return Book"), home = actionButton("⬅ Home");
-        borrow.addActionListener(e->borrowDialog()); ret.addActionListener(e->returnDialog()); home.addActionListener(e->cardLayout.show(mainPanel,"Home"));
-        left.add(borrow); left.add(ret); left.add(home); top.add(left, BorderLayout.WEST);
+        JButton borrow = actionButton("📥 Borrow Book"), ret = actionButton("📤 Return Book"), overdue = actionButton("⏰ Overdue"), popular = actionButton("📊 Popular"), batch = actionButton("🧾 Batch"), home = actionButton("⬅ Home");
+        borrow.addActionListener(e->borrowDialog()); ret.addActionListener(e->returnDialog()); overdue.addActionListener(e->showOverdue()); popular.addActionListener(e->showPopular()); batch.addActionListener(e->batchDialog()); home.addActionListener(e->showPage("Home"));
+        left.add(borrow); left.add(ret); left.add(overdue); left.add(popular); left.add(batch); left.add(home); top.add(left, BorderLayout.WEST);
 
         JPanel searchWrap = new JPanel(new FlowLayout(FlowLayout.RIGHT,6,8)); searchWrap.setOpaque(false);
         JLabel sLabel = new JLabel("Search:"); sLabel.setForeground(MUTED); searchWrap.add(sLabel); loanSearch.setPreferredSize(new Dimension(280,28)); searchWrap.add(loanSearch);
         top.add(searchWrap, BorderLayout.EAST);
 
         page.add(top, BorderLayout.PAGE_START);
-        JScrollPane scroll = new JScrollPane(loanListPanel); scroll.setOpaque(false); scroll.getViewport().setOpaque(false); scroll.setBorder(null);
-        page.add(scroll, BorderLayout.CENTER);
+        page.add(loanScroll, BorderLayout.CENTER);
         return page;
     }
 
-    private JPanel createListContainer(){ JPanel p=new JPanel(); p.setOpaque(false); p.setLayout(new BoxLayout(p, BoxLayout.Y_AXIS)); return p; }
+    private JScrollPane createListScroll(Component view){ JScrollPane scroll = new JScrollPane(view); scroll.setOpaque(false); scroll.getViewport().setOpaque(false); scroll.setBorder(null); return scroll; }
 
     // ---------------- UI element factories ----------------
     private JButton homeIconButton(String label, String emoji){
         final boolean[] hover = {false};
         JButton b = new JButton(){ protected void paintComponent(Graphics g){
-            Graphics2D g2=(Graphics2D)g.create(); g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-            int w=getWidth(), h=getHeight(); GradientPaint gp=new GradientPaint(0,0,new Color(255,248,240), w,h,new Color(245,210,195));
-            g2.setPaint(gp); g2.fillRoundRect(0,0,w,h,24,24);
-            if(hover[0]){ g2.setColor(new Color(0,0,0,50)); g2.fillRoundRect(3,3,w-6,h-6,24,24); }
-            super.paintComponent(g2); g2.dispose();
+            RenderCache.buttonFace(g, getWidth(), getHeight(), HOME_FROM, HOME_TO, hover[0]);
+            super.paintComponent(g);
         }};
         b.setContentAreaFilled(false); b.setOpaque(false); JLabel lbl = new JLabel("<html><center><span style='font-size:32px;'>"+emoji+"</span><br><span style='font-size:15px;color:#5A4F48'>"+label+"</span></center></html>", JLabel.CENTER);
         b.setLayout(new BorderLayout()); b.add(lbl,BorderLayout.CENTER); b.setPreferredSize(new Dimension(200,130)); b.setBorder(new EmptyBorder(10,10,10,10)); b.setFocusPainted(false);
@@ -253,174 +333,299 @@ public class LibraryAWT extends JFrame {
         return b;
     }
 
-    private JButton actionButton(String text){ JButton b=new JButton(text); b.setFont(new Font("SansSerif",Font.PLAIN,14)); b.setForeground(FG); b.setBackground(new Color(255,245,236)); b.setFocusPainted(false); b.setBorder(new CompoundBorder(new LineBorder(new Color(220,210,205),1,true), new EmptyBorder(8,12,8,12))); return b; }
-
-    private JPanel createCard(){ JPanel card = new JPanel(){ protected void paintComponent(Graphics g){ super.paintComponent(g); Graphics2D g2=(Graphics2D)g.create(); g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON); int w=getWidth(), h=getHeight(); g2.setColor(new Color(0,0,0,30)); g2.fillRoundRect(5,7,w-10,h-10,RADIUS,RADIUS); g2.setColor(CARD); g2.fillRoundRect(0,0,w-10,h-10,RADIUS,RADIUS); g2.dispose(); } }; card.setOpaque(false); card.setLayout(new BorderLayout(10,10)); card.setBorder(new EmptyBorder(10,10,10,10)); return card; }
+    private JButton actionButton(String text){ JButton b=new JButton(text); b.setFont(RenderCache.font("SansSerif",Font.PLAIN,14)); b.setForeground(FG); b.setBackground(DIALOG_BG); b.setFocusPainted(false); b.setBorder(new CompoundBorder(new LineBorder(BUTTON_BORDER,1,true), new EmptyBorder(8,12,8,12))); return b; }
 
-    private JPanel badgePanel(String letter){ JPanel p=new JPanel(new GridBagLayout()); p.setOpaque(false); p.setBorder(new EmptyBorder(6,12,6,6)); p.add(new JLabel(new CircleIcon(letter,42,ACCENT,Color.white))); return p; }
+    private JPanel createCard(){ JPanel card = new JPanel(){ protected void paintComponent(Graphics g){ super.paintComponent(g); RenderCache.card(g, getWidth(), getHeight(), CARD, RADIUS); } }; card.setOpaque(false); card.setLayout(new BorderLayout(10,10)); card.setBorder(new EmptyBorder(10,10,10,10)); return card; }
 
-    // Circle icon (same behavior)
-    private static class CircleIcon implements Icon { private final String letter; private final int size; private final Color bg; private final Color fg; CircleIcon(String letter,int size,Color bg,Color fg){this.letter=letter;this.size=size;this.bg=bg;this.fg=fg;} public void paintIcon(Component c, Graphics g, int x, int y){ Graphics2D g2=(Graphics2D)g.create(); g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON); g2.setColor(bg); g2.fillOval(x,y,size,size); g2.setColor(new Color(0,0,0,20)); g2.drawOval(x+1,y+1,size-2,size-2); g2.setColor(fg); g2.setFont(new Font("SansSerif",Font.BOLD,size/2)); FontMetrics fm=g2.getFontMetrics(); int tx=x+(size-fm.stringWidth(letter))/2; int ty=y+(size-fm.getHeight())/2+fm.getAscent(); g2.drawString(letter,tx,ty); g2.dispose(); } public int getIconWidth(){return size;} public int getIconHeight(){return size;} }
+    // Circle icon (same behavior); the letter can be swapped so one icon serves every row of a list
+    private static class CircleIcon implements Icon { String letter; private final int size; private final Color bg; private final Color fg; CircleIcon(String letter,int size,Color bg,Color fg){this.letter=letter;this.size=size;this.bg=bg;this.fg=fg;} public void paintIcon(Component c, Graphics g, int x, int y){ RenderCache.badge(g,x,y,letter,size,bg,fg); } public int getIconWidth(){return size;} public int getIconHeight(){return size;} }
 
     // ---------------- List refreshers (templated by type) ----------------
-    private void refreshAll(){ refreshBookList(null); refreshMemberList(null); refreshLoanList(null); }
+    private void refreshAll(){
+        if(builtPages.contains("Books")) refreshBookList(null);
+        if(builtPages.contains("Members")) refreshMemberList(null);
+        if(builtPages.contains("Loans")) refreshLoanList(null);
+    }
 
     private void refreshBookList(String query){
-        bookListPanel.removeAll();
-        List<Book> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(books)
-                : books.stream().filter(b -> contains(b.title,query.toLowerCase())||contains(b.author,query.toLowerCase())||contains(b.id,query.toLowerCase())).collect(Collectors.toList());
-        if(toShow.isEmpty()) bookListPanel.add(emptyLabel("No books found."));
-        else { int i=1; for(Book b: toShow){ JPanel card = createCard(); card.setMaximumSize(new Dimension(Integer.MAX_VALUE,110)); card.add(badgePanel(indexToLetters(i)), BorderLayout.WEST);
-            JPanel center = new JPanel(); center.setOpaque(false); center.setLayout(new BoxLayout(center,BoxLayout.Y_AXIS));
-            JLabel t = new JLabel(b.title==null||b.title.isEmpty()?"Untitled":b.title); t.setForeground(FG); t.setFont(new Font("Serif",Font.BOLD,18));
-            JLabel a = new JLabel("by " + (b.author==null||b.author.isEmpty()?"Unknown":b.author)); a.setForeground(MUTED); a.setFont(new Font("SansSerif",Font.ITALIC,12));
-            JLabel d = new JLabel("Year: "+b.year+"   Available: "+b.available+"/"+b.total); d.setForeground(MUTED); d.setFont(new Font("SansSerif",Font.PLAIN,12));
-            center.add(t); center.add(Box.createVerticalStrut(6)); center.add(a); center.add(Box.createVerticalStrut(6)); center.add(d);
-            card.add(center, BorderLayout.CENTER);
-            JPanel right = new JPanel(new BorderLayout()); right.setOpaque(false); JLabel idL = new JLabel("ID: "+b.id, JLabel.RIGHT); idL.setForeground(ACCENT); idL.setFont(new Font("Monospaced",Font.BOLD,13));
-            JLabel hint = new JLabel("<html><i style='color:#A07B73'>Click for details</i></html>", JLabel.RIGHT); hint.setFont(new Font("SansSerif", Font.PLAIN, 11));
-            right.add(idL, BorderLayout.NORTH); right.add(hint, BorderLayout.SOUTH); right.setBorder(new EmptyBorder(6,6,6,12)); card.add(right, BorderLayout.EAST);
-            addCardHover(card, ()-> showBookDetail(b)); bookListPanel.add(card); bookListPanel.add(Box.createVerticalStrut(12)); i++; } }
-        bookListPanel.revalidate(); bookListPanel.repaint();
+        Metrics.Sample timing = Metrics.start(Metrics.Op.REFRESH_BOOKS);
+        try {
+            bookQuery = (query==null||query.trim().isEmpty())? null : query;
+            List<Book> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(store.books()) : bookIndex.match(query);
+            showRows(bookScroll, bookCardList, bookRows, toShow, bookEmpty);
+        } finally { Metrics.stop(timing); }
     }
 
     private void refreshMemberList(String query){
-        memberListPanel.removeAll();
-        List<Member> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(members)
-                : members.stream().filter(m -> contains(m.name,query.toLowerCase())||contains(m.id,query.toLowerCase())).collect(Collectors.toList());
-        if(toShow.isEmpty()) memberListPanel.add(emptyLabel("No members found."));
-        else { int i=1; for(Member m: toShow){ JPanel card=createCard(); card.setMaximumSize(new Dimension(Integer.MAX_VALUE,100));
-            card.add(badgePanel(indexToLetters(i)), BorderLayout.WEST);
-            JPanel center=new JPanel(); center.setOpaque(false); center.setLayout(new BoxLayout(center,BoxLayout.Y_AXIS));
-            JLabel idBig=new JLabel(m.id); idBig.setForeground(ACCENT_SOFT); idBig.setFont(new Font("Monospaced",Font.BOLD,20));
-            JLabel name=new JLabel(m.name); name.setForeground(FG); name.setFont(new Font("Serif",Font.BOLD,18));
-            center.add(idBig); center.add(Box.createVerticalStrut(6)); center.add(name); card.add(center, BorderLayout.CENTER);
-            JPanel right=new JPanel(new BorderLayout()); right.setOpaque(false); JLabel meta=new JLabel("Member", JLabel.RIGHT); meta.setForeground(MUTED); meta.setFont(new Font("SansSerif",Font.PLAIN,12));
-            JLabel hint=new JLabel("<html><i style='color:#A07B73'>Click to view</i></html>", JLabel.RIGHT); hint.setFont(new Font("SansSerif",Font.PLAIN,11));
-            right.add(meta, BorderLayout.NORTH); right.add(hint, BorderLayout.SOUTH); right.setBorder(new EmptyBorder(6,6,6,12)); card.add(right, BorderLayout.EAST);
-            addCardHover(card, ()-> showMemberDetail(m)); memberListPanel.add(card); memberListPanel.add(Box.createVerticalStrut(12)); i++; } }
-        memberListPanel.revalidate(); memberListPanel.repaint();
+        Metrics.Sample timing = Metrics.start(Metrics.Op.REFRESH_MEMBERS);
+        try {
+            memberQuery = (query==null||query.trim().isEmpty())? null : query;
+            List<Member> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(store.members()) : memberIndex.match(query);
+            showRows(memberScroll, memberCardList, memberRows, toShow, memberEmpty);
+        } finally { Metrics.stop(timing); }
     }
 
     private void refreshLoanList(String query){
-        loanListPanel.removeAll();
-        List<Loan> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(loans)
-                : loans.stream().filter(l -> contains(l.loanId,query.toLowerCase())||contains(l.bookId,query.toLowerCase())||contains(l.memberId,query.toLowerCase())).collect(Collectors.toList());
-        if(toShow.isEmpty()) loanListPanel.add(emptyLabel("No loans found."));
-        else { int i=1; for(Loan l: toShow){ JPanel card=createCard(); card.setMaximumSize(new Dimension(Integer.MAX_VALUE,130));
-            card.add(badgePanel(indexToLetters(i)), BorderLayout.WEST);
+        Metrics.Sample timing = Metrics.start(Metrics.Op.REFRESH_LOANS);
+        try {
+            loanQuery = (query==null||query.trim().isEmpty())? null : query;
+            loanClock = fines.now();
+            List<Loan> toShow = (query==null||query.trim().isEmpty())? new ArrayList<>(store.loans()) : loanIndex.match(query);
+            showRows(loanScroll, loanCardList, loanRows, toShow, loanEmpty);
+        } finally { Metrics.stop(timing); }
+    }
 
-            JPanel center=new JPanel(); center.setOpaque(false); center.setLayout(new BoxLayout(center,BoxLayout.Y_AXIS));
+    private <T> void showRows(JScrollPane scroll, JList<T> list, RowListModel<T> model, List<T> rows, Component empty){
+        list.putClientProperty(HOVER_KEY, -1); model.setRows(rows);
+        syncEmptyView(scroll, list, model, empty);
+    }
 
-            JLabel loanId=new JLabel("Loan: "+ shortId(l.loanId)); loanId.setForeground(ACCENT_SOFT); loanId.setFont(new Font("Monospaced",Font.BOLD,16));
-            JLabel details=new JLabel("Book → "+l.bookId+"       Member → "+l.memberId); details.setForeground(FG); details.setFont(new Font("SansSerif",Font.BOLD,14));
+    private <T> void syncEmptyView(JScrollPane scroll, JList<T> list, RowListModel<T> model, Component empty){
+        Component view = model.getSize()==0? empty : list;
+        if(scroll.getViewport().getView()!=view) scroll.setViewportView(view);
+        scroll.revalidate(); scroll.repaint();
+    }
 
-            // NEW UI LABELS: days, days left / overdue, fine
-            int days = daysSince(l.issueDate);
-            int fine = fineForLoan(l);
-            int left = daysLeft(l);
+    private Component emptyLabel(String msg){ JLabel l=new JLabel(msg,JLabel.CENTER); l.setFont(RenderCache.font("SansSerif",Font.ITALIC,14)); l.setForeground(MUTED); l.setBorder(new EmptyBorder(20,10,20,10)); return l; }
+
+    // ---------------- Virtualized card lists ----------------
+    // One JList per page with a fixed row height: only rows inside the viewport are painted,
+    // and each page reuses a single card component (its renderer) for every row.
+    private <T> JList<T> createCardList(RowListModel<T> model, CardRenderer<T> renderer, T prototype, int maxCardHeight, Consumer<T> onClick){
+        JList<T> list = new JList<>(model); list.setOpaque(false); list.setCellRenderer(renderer); list.putClientProperty(HOVER_KEY, -1);
+        renderer.configure(prototype); list.setFixedCellHeight(Math.min(maxCardHeight, renderer.card.getPreferredSize().height) + 12); list.setFixedCellWidth(1); // width tracks the viewport
+        MouseAdapter hover = new MouseAdapter(){
+            private int rowAt(Point p){ int i=list.locationToIndex(p); Rectangle r = i<0? null : list.getCellBounds(i,i); return r!=null && r.contains(p)? i : -1; }
+            private void setHover(int i){
+                int old=(Integer)list.getClientProperty(HOVER_KEY); if(old==i) return;
+                list.putClientProperty(HOVER_KEY, i); list.setCursor(i<0? Cursor.getDefaultCursor() : Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+                repaintRow(old); repaintRow(i);
+            }
+            private void repaintRow(int i){ if(i>=0 && i<model.getSize()){ Rectangle r=list.getCellBounds(i,i); if(r!=null) list.repaint(r); } }
+            @Override public void mouseMoved(MouseEvent e){ setHover(rowAt(e.getPoint())); }
+            @Override public void mouseExited(MouseEvent e){ setHover(-1); }
+            @Override public void mouseClicked(MouseEvent e){ int i=rowAt(e.getPoint()); if(i>=0) onClick.accept(model.getElementAt(i)); }
+        };
+        list.addMouseListener(hover); list.addMouseMotionListener(hover);
+        return list;
+    }
 
-            JLabel daysInfo = new JLabel("Issued: "+days+" days ago");
-            daysInfo.setFont(new Font("SansSerif", Font.PLAIN, 12));
-            daysInfo.setForeground(MUTED);
+    // renders the same card layout the pages always used; subclasses only fill in the labels
+    private abstract class CardRenderer<T> implements ListCellRenderer<T> {
+        final JPanel cell = new JPanel(new BorderLayout()), card = createCard(), center = new JPanel();
+        final CircleIcon badgeIcon = new CircleIcon("",42,ACCENT,Color.white);
+        final JLabel badge = new JLabel(badgeIcon), meta = new JLabel("", JLabel.RIGHT), hint = new JLabel("", JLabel.RIGHT);
+        private final Border plain = new EmptyBorder(10,10,10,10), hovered = new CompoundBorder(new LineBorder(ACCENT_SOFT,2,true), new EmptyBorder(10,10,10,10));
+
+        CardRenderer(String hintText){
+            cell.setOpaque(false); cell.setBorder(new EmptyBorder(0,0,12,0)); cell.add(card, BorderLayout.CENTER);
+            JPanel b=new JPanel(new GridBagLayout()); b.setOpaque(false); b.setBorder(new EmptyBorder(6,12,6,6)); b.add(badge); card.add(b, BorderLayout.WEST);
+            center.setOpaque(false); center.setLayout(new BoxLayout(center,BoxLayout.Y_AXIS)); card.add(center, BorderLayout.CENTER);
+            JPanel right=new JPanel(new BorderLayout()); right.setOpaque(false); hint.setText("<html><i style='color:#A07B73'>"+hintText+"</i></html>"); hint.setFont(RenderCache.font("SansSerif",Font.PLAIN,11));
+            right.add(meta, BorderLayout.NORTH); right.add(hint, BorderLayout.SOUTH); right.setBorder(new EmptyBorder(6,6,6,12)); card.add(right, BorderLayout.EAST);
+        }
 
-            JLabel leftInfo = new JLabel();
-            leftInfo.setFont(new Font("SansSerif", Font.BOLD, 12));
-            if (left < 0) {
-                leftInfo.setText("Overdue by " + (-left) + " days");
-                leftInfo.setForeground(Color.RED);
-            } else {
-                leftInfo.setText("Days Left: " + left);
-                // warn when close to due
-                leftInfo.setForeground(left <= 5 ? Color.RED : new Color(0,120,0));
-            }
+        JLabel label(Color fg, Font f){ JLabel l=new JLabel(); l.setForeground(fg); l.setFont(f); return l; }
 
-            JLabel fineInfo = new JLabel("Fine: ₹" + fine);
-            fineInfo.setFont(new Font("SansSerif", Font.PLAIN, 12));
-            fineInfo.setForeground(fine > 0 ? Color.RED : MUTED);
+        abstract void configure(T value);
+
+        @Override public Component getListCellRendererComponent(JList<? extends T> list, T value, int index, boolean selected, boolean focused){
+            badgeIcon.letter = indexToLetters(index+1);
+            card.setBorder(Objects.equals(list.getClientProperty(HOVER_KEY), index)? hovered : plain);
+            configure(value); return cell;
+        }
+    }
+
+    private class BookCardRenderer extends CardRenderer<Book> {
+        final JLabel t = label(FG, RenderCache.font("Serif",Font.BOLD,18)), a = label(MUTED, RenderCache.font("SansSerif",Font.ITALIC,12)), d = label(MUTED, RenderCache.font("SansSerif",Font.PLAIN,12));
+        BookCardRenderer(){
+            super("Click for details");
+            center.add(t); center.add(Box.createVerticalStrut(6)); center.add(a); center.add(Box.createVerticalStrut(6)); center.add(d);
+            meta.setForeground(ACCENT); meta.setFont(RenderCache.font("Monospaced",Font.BOLD,13));
+        }
+        void configure(Book b){
+            String title = b.title(), author = b.author();
+            t.setText(title==null||title.isEmpty()?"Untitled":title); a.setText("by " + (author==null||author.isEmpty()?"Unknown":author));
+            d.setText("Year: "+b.year()+"   Available: "+b.available()+"/"+b.total()); meta.setText("ID: "+b.id());
+        }
+    }
+
+    private class MemberCardRenderer extends CardRenderer<Member> {
+        final JLabel idBig = label(ACCENT_SOFT, RenderCache.font("Monospaced",Font.BOLD,20)), name = label(FG, RenderCache.font("Serif",Font.BOLD,18));
+        MemberCardRenderer(){
+            super("Click to view");
+            center.add(idBig); center.add(Box.createVerticalStrut(6)); center.add(name);
+            meta.setText("Member"); meta.setForeground(MUTED); meta.setFont(RenderCache.font("SansSerif",Font.PLAIN,12));
+        }
+        void configure(Member m){ idBig.setText(m.id); name.setText(m.name); }
+    }
 
+    private class LoanCardRenderer extends CardRenderer<Loan> {
+        final JLabel loanId = label(ACCENT_SOFT, RenderCache.font("Monospaced",Font.BOLD,16)), details = label(FG, RenderCache.font("SansSerif",Font.BOLD,14));
+        final JLabel daysInfo = label(MUTED, RenderCache.font("SansSerif",Font.PLAIN,12)), leftInfo = label(MUTED, RenderCache.font("SansSerif",Font.BOLD,12)), fineInfo = label(MUTED, RenderCache.font("SansSerif",Font.PLAIN,12));
+        LoanCardRenderer(){
+            super("Click for details");
             center.add(loanId); center.add(Box.createVerticalStrut(6));
             center.add(details); center.add(Box.createVerticalStrut(6));
             center.add(daysInfo); center.add(Box.createVerticalStrut(4));
             center.add(leftInfo); center.add(Box.createVerticalStrut(4));
             center.add(fineInfo);
+            meta.setText("Loan Record"); meta.setForeground(MUTED); meta.setFont(RenderCache.font("SansSerif",Font.PLAIN,12));
+        }
+        void configure(Loan l){
+            loanId.setText("Loan: "+ shortId(l.loanId)); details.setText("Book → "+l.bookId+"       Member → "+l.memberId);
 
-            card.add(center, BorderLayout.CENTER);
-
-            JPanel right=new JPanel(new BorderLayout()); right.setOpaque(false); JLabel meta=new JLabel("Loan Record", JLabel.RIGHT); meta.setForeground(MUTED); meta.setFont(new Font("SansSerif",Font.PLAIN,12));
-            JLabel hint=new JLabel("<html><i style='color:#A07B73'>Click for details</i></html>", JLabel.RIGHT); hint.setFont(new Font("SansSerif",Font.PLAIN,11));
-            right.add(meta, BorderLayout.NORTH); right.add(hint, BorderLayout.SOUTH); right.setBorder(new EmptyBorder(6,6,6,12)); card.add(right, BorderLayout.EAST);
-
-            addCardHover(card, ()-> showLoanDetail(l)); loanListPanel.add(card); loanListPanel.add(Box.createVerticalStrut(12)); i++; } }
-        loanListPanel.revalidate(); loanListPanel.repaint();
-    }
-
-    private Component emptyLabel(String msg){ JLabel l=new JLabel(msg,JLabel.CENTER); l.setFont(new Font("SansSerif",Font.ITALIC,14)); l.setForeground(MUTED); l.setBorder(new EmptyBorder(20,10,20,10)); return l; }
+            // days, days left / overdue, fine (all from the clock reading of the last refresh)
+            FineEngine.Reading r = loanClock;
+            int days = r.daysSince(l);
+            int fine = r.fine(l);
+            int left = r.daysLeft(l);
 
-    // ---------------- interactions ----------------
-    private void addCardHover(JPanel card, Runnable onClick){
-        card.addMouseListener(new MouseAdapter(){
-            @Override public void mouseEntered(MouseEvent e){ card.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR)); card.setBorder(new CompoundBorder(new LineBorder(ACCENT_SOFT,2,true), new EmptyBorder(10,10,10,10))); card.repaint(); }
-            @Override public void mouseExited(MouseEvent e){ card.setCursor(Cursor.getDefaultCursor()); card.setBorder(new EmptyBorder(10,10,10,10)); card.repaint(); }
-            @Override public void mouseClicked(MouseEvent e){ onClick.run(); }
-        });
+            daysInfo.setText("Issued: "+days+" days ago");
+            if (left < 0) {
+                leftInfo.setText("Overdue by " + (-left) + " days");
+                leftInfo.setForeground(Color.RED);
+            } else {
+                leftInfo.setText("Days Left: " + left);
+                // warn when close to due
+                leftInfo.setForeground(left <= 5 ? Color.RED : SAFE);
+            }
+            fineInfo.setText("Fine: ₹" + fine);
+            fineInfo.setForeground(fine > 0 ? Color.RED : MUTED);
+        }
     }
 
     // ---------------- dialogs ----------------
     private void addBookDialog(){
         JTextField idF=new JTextField(), titleF=new JTextField(), authorF=new JTextField(), yearF=new JTextField(String.valueOf(Calendar.getInstance().get(Calendar.YEAR))), totalF=new JTextField("1");
-        JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(new Color(255,245,236));
+        JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(DIALOG_BG);
         p.add(labeledField("Book ID", idF)); p.add(labeledField("Title", titleF)); p.add(labeledField("Author", authorF)); p.add(labeledField("Year", yearF)); p.add(labeledField("Total Copies", totalF));
         if(JOptionPane.showConfirmDialog(this,p,"Add Book",JOptionPane.OK_CANCEL_OPTION)==0){
             String id=idF.getText().trim(), t=titleF.getText().trim(), a=authorF.getText().trim(); int y=parseIntOrDefault(yearF.getText(), Calendar.getInstance().get(Calendar.YEAR)); int tot=Math.max(1, parseIntOrDefault(totalF.getText(),1));
-            if(!id.isEmpty()){ books.add(new Book(id,t,a,y,tot)); updateAfterChange(); }
+            if(id.isEmpty()) return;
+            Book nb=new Book(id,t,a,y,tot);
+            if(!store.addBook(nb)){ String why = LibraryStore.invalid(nb); JOptionPane.showMessageDialog(this, why!=null? "Book not added: "+why+"." : "A book with ID "+id+" already exists."); }
         }
     }
 
     private void addMemberDialog(){
-        JTextField idF=new JTextField(), nameF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(new Color(255,245,236));
+        JTextField idF=new JTextField(), nameF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(DIALOG_BG);
         p.add(labeledField("Member ID", idF)); p.add(labeledField("Name", nameF));
         if(JOptionPane.showConfirmDialog(this,p,"Add Member",JOptionPane.OK_CANCEL_OPTION)==0){
-            String id=idF.getText().trim(), nm=nameF.getText().trim(); if(!id.isEmpty() && !nm.isEmpty()){ members.add(new Member(id,nm)); updateAfterChange(); refreshMemberList(null); }
+            String id=idF.getText().trim(), nm=nameF.getText().trim(); if(id.isEmpty() || nm.isEmpty()) return;
+            Member mem=new Member(id,nm);
+            if(!store.addMember(mem)){ String why = LibraryStore.invalid(mem); JOptionPane.showMessageDialog(this, why!=null? "Member not added: "+why+"." : "A member with ID "+id+" already exists."); }
         }
     }
 
     private void borrowDialog(){
-        JTextField bookF=new JTextField(), memberF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(new Color(255,245,236));
+        JTextField bookF=new JTextField(), memberF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(DIALOG_BG);
         p.add(labeledField("Book ID", bookF)); p.add(labeledField("Member ID", memberF));
         if(JOptionPane.showConfirmDialog(this,p,"Borrow Book",JOptionPane.OK_CANCEL_OPTION)==0){
-            Book b=findBook(bookF.getText().trim()); Member m=findMember(memberF.getText().trim());
-            if(b!=null && m!=null && b.available>0){
-                b.available--;
-                loans.add(new Loan(UUID.randomUUID().toString(), b.id, m.id)); // constructor sets issueDate to now
-                updateAfterChange();
-                refreshLoanList(null);
-            } else JOptionPane.showMessageDialog(this,"Invalid or unavailable book/member.");
+            Loan nl=new Loan(UUID.randomUUID().toString(), bookF.getText().trim(), memberF.getText().trim()); // constructor sets issueDate to now
+            if(!store.borrow(nl)) JOptionPane.showMessageDialog(this,"Invalid or unavailable book/member.");
         }
     }
 
     private void returnDialog(){
-        JTextField loanF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(new Color(255,245,236)); p.add(labeledField("Loan ID", loanF));
+        JTextField loanF=new JTextField(); JPanel p=new JPanel(new GridLayout(0,1,6,6)); p.setBackground(DIALOG_BG); p.add(labeledField("Loan ID", loanF));
         if(JOptionPane.showConfirmDialog(this,p,"Return Book",JOptionPane.OK_CANCEL_OPTION)==0){
-            Loan L=findLoan(loanF.getText().trim()); if(L!=null){ Book b=findBook(L.bookId); if(b!=null) b.available++; loans.remove(L); updateAfterChange(); refreshLoanList(null); } else JOptionPane.showMessageDialog(this,"Loan not found.");
+            if(store.returnLoan(loanF.getText().trim())==null) JOptionPane.showMessageDialog(this,"Loan not found.");
         }
     }
 
-    private JPanel labeledField(String name, JTextField f){ JPanel p=new JPanel(new BorderLayout(6,6)); p.setOpaque(false); JLabel l=new JLabel(name); l.setForeground(FG); l.setFont(new Font("SansSerif",Font.PLAIN,12)); p.add(l,BorderLayout.WEST); p.add(f,BorderLayout.CENTER); return p; }
+    // scanner desk: ids are typed (or scanned, one per line) into the box and committed together as one store batch
+    private void batchDialog(){
+        JRadioButton checkout = new JRadioButton("Checkout", true), ret = new JRadioButton("Return"); ButtonGroup g = new ButtonGroup(); g.add(checkout); g.add(ret);
+        checkout.setOpaque(false); ret.setOpaque(false);
+        JTextField memberF = new JTextField(); JTextArea scans = new JTextArea(12, 28), report = new JTextArea(6, 28); report.setEditable(false);
+        JCheckBox allOrNothing = new JCheckBox("All or nothing"); allOrNothing.setOpaque(false);
+        JLabel count = new JLabel("0 items"); count.setForeground(MUTED);
+        scans.getDocument().addDocumentListener(new DocumentListener(){
+            void update(){ count.setText(scans.getText().lines().filter(s -> !s.isBlank()).count()+" items"); }
+            public void insertUpdate(DocumentEvent e){ update(); } public void removeUpdate(DocumentEvent e){ update(); } public void changedUpdate(DocumentEvent e){ update(); }
+        });
+        JButton commit = new JButton("Commit");
+        commit.addActionListener(e -> {
+            CirculationSession s = new CirculationSession(store, checkout.isSelected()? CirculationSession.Mode.CHECKOUT : CirculationSession.Mode.RETURN, memberF.getText());
+            s.scanAll(scans.getText());
+            if(s.size()==0) return;
+            boolean whole = allOrNothing.isSelected();
+            commit.setEnabled(false); report.setText("Committing "+s.size()+" items…");
+            // off the EDT: the batch takes every stripe and may wait behind a journal rotation or busy desks
+            Thread t = new Thread(() -> {
+                String msg; boolean clear = false;
+                try {
+                    CirculationSession.Result r = s.commit(whole); // one batch: one journal append, one page update
+                    StringBuilder sb = new StringBuilder(r.toString());
+                    for(CirculationSession.Failure f: r.failures) sb.append('\n').append(f);
+                    msg = sb.toString(); clear = !r.rolledBack;
+                } catch(RuntimeException ex){ msg = "Batch failed: "+ex.getMessage(); }
+                String text = msg; boolean done = clear;
+                SwingUtilities.invokeLater(() -> {
+                    report.setText(text); report.setCaretPosition(0);
+                    if(done) scans.setText("");
+                    commit.setEnabled(true); scans.requestFocusInWindow();
+                });
+            }, "library-batch");
+            t.setDaemon(true); t.start();
+        });
+        JPanel top = new JPanel(new GridLayout(0,1,6,6)); top.setOpaque(false);
+        JPanel modes = new JPanel(new FlowLayout(FlowLayout.LEFT,6,0)); modes.setOpaque(false); modes.add(checkout); modes.add(ret); modes.add(allOrNothing);
+        top.add(modes); top.add(labeledField("Member ID", memberF));
+        JPanel bottom = new JPanel(new BorderLayout(6,6)); bottom.setOpaque(false);
+        JPanel actions = new JPanel(new BorderLayout()); actions.setOpaque(false); actions.add(count, BorderLayout.WEST); actions.add(commit, BorderLayout.EAST);
+        bottom.add(actions, BorderLayout.NORTH); bottom.add(new JScrollPane(report), BorderLayout.CENTER);
+        JPanel p = new JPanel(new BorderLayout(8,8)); p.setBackground(DIALOG_BG); p.setBorder(new EmptyBorder(12,12,12,12));
+        p.add(top, BorderLayout.NORTH); p.add(new JScrollPane(scans), BorderLayout.CENTER); p.add(bottom, BorderLayout.SOUTH);
+        JDialog dlg = new JDialog(this, "Batch circulation", false); dlg.setContentPane(p); dlg.pack(); dlg.setLocationRelativeTo(this);
+        dlg.setVisible(true); scans.requestFocusInWindow();
+    }
+
+    // streams a CSV / JSON Lines dump in on a background thread; the dialog only shows progress and can cancel
+    private void importDialog(){
+        if(importing){ JOptionPane.showMessageDialog(this,"An import is already running."); return; }
+        JFileChooser fc = new JFileChooser(); fc.setDialogTitle("Import books / members (CSV or JSON Lines)");
+        if(fc.showOpenDialog(this)!=JFileChooser.APPROVE_OPTION) return;
+        File file = fc.getSelectedFile();
+        AtomicBoolean cancel = new AtomicBoolean();
+        JProgressBar bar = new JProgressBar(0, 1000); bar.setStringPainted(true);
+        JLabel status = new JLabel("Starting…"); JButton stop = new JButton("Cancel"); stop.addActionListener(e -> { cancel.set(true); stop.setEnabled(false); });
+        JPanel p = new JPanel(new BorderLayout(8,8)); p.setBorder(new EmptyBorder(12,12,12,12)); p.add(status, BorderLayout.NORTH); p.add(bar, BorderLayout.CENTER); p.add(stop, BorderLayout.SOUTH);
+        JDialog dlg = new JDialog(this, "Importing "+file.getName(), false); dlg.setContentPane(p); dlg.setSize(420,140); dlg.setLocationRelativeTo(this); dlg.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        importing = true; dlg.setVisible(true);
+        Thread t = new Thread(() -> {
+            String result;
+            try {
+                BulkImport.Report r = core.importFile(file.toPath(), (read, total, imported, rejected) -> SwingUtilities.invokeLater(() -> {
+                    bar.setValue(total==0? 1000 : (int)(read*1000/total)); status.setText(String.format("%,d imported, %,d rejected", imported, rejected)); }), cancel);
+                StringBuilder sb = new StringBuilder(r.toString());
+                if(r.rejected>0){ sb.append("\n\nAll rejected rows: ").append(r.rejectsFile).append("\n"); r.firstRejects.stream().limit(10).forEach(x -> sb.append("\n").append(x)); }
+                result = sb.toString();
+            } catch(Exception ex){ result = "Import failed: "+ex.getMessage(); }
+            String msg = result;
+            SwingUtilities.invokeLater(() -> { importing = false; dlg.dispose(); refreshAll(); JOptionPane.showMessageDialog(this, msg, "Import", JOptionPane.INFORMATION_MESSAGE); });
+        }, "library-import-main");
+        t.setDaemon(true); t.start();
+    }
+
+    private JPanel labeledField(String name, JTextField f){ JPanel p=new JPanel(new BorderLayout(6,6)); p.setOpaque(false); JLabel l=new JLabel(name); l.setForeground(FG); l.setFont(RenderCache.font("SansSerif",Font.PLAIN,12)); p.add(l,BorderLayout.WEST); p.add(f,BorderLayout.CENTER); return p; }
 
     // ---------------- details ----------------
-    private void showBookDetail(Book b){ JOptionPane.showMessageDialog(this,new JLabel("<html><b>"+escape(b.title)+"</b><br>Author: "+escape(b.author)+"<br>Year: "+b.year+"<br>Available: "+b.available+"/"+b.total+"<br>ID: "+b.id+"</html>"), "Book Details", JOptionPane.INFORMATION_MESSAGE); }
-    private void showMemberDetail(Member m){ JOptionPane.showMessageDialog(this,new JLabel("<html><b>"+escape(m.name)+"</b><br><span style='font-family:monospace;'>"+escape(m.id)+"</span></html>"), "Member Details", JOptionPane.INFORMATION_MESSAGE); }
+    private void showBookDetail(Book b){ JOptionPane.showMessageDialog(this,new JLabel("<html><b>"+escape(b.title())+"</b><br>Author: "+escape(b.author())+"<br>Year: "+b.year()+"<br>Available: "+b.available()+"/"+b.total()+"<br>ID: "+b.id()+"<br>On loan to: "+joinIds(store.loansForBook(b.id()), l -> l.memberId)+"</html>"), "Book Details", JOptionPane.INFORMATION_MESSAGE); }
+    private void showMemberDetail(Member m){ JOptionPane.showMessageDialog(this,new JLabel("<html><b>"+escape(m.name)+"</b><br><span style='font-family:monospace;'>"+escape(m.id)+"</span><br>Books on loan: "+joinIds(store.loansForMember(m.id), l -> l.bookId)+"<br>Outstanding fines: ₹"+fines.fineForMember(fines.now(), m.id)+"</html>"), "Member Details", JOptionPane.INFORMATION_MESSAGE); }
 
     private void showLoanDetail(Loan l){
-        int days = daysSince(l.issueDate);
-        int fine = fineForLoan(l);
-        int left = daysLeft(l);
+        FineEngine.Reading r = fines.now();
+        int days = r.daysSince(l);
+        int fine = r.fine(l);
+        int left = r.daysLeft(l);
+        Book b = store.book(l.bookId); Member m = store.member(l.memberId);
 
         String msg = "<html>"
                 + "<b>Loan ID:</b> " + shortId(l.loanId)
-                + "<br><b>Book:</b> " + l.bookId
-                + "<br><b>Member:</b> " + l.memberId
+                + "<br><b>Book:</b> " + l.bookId + (b==null? "" : " ("+escape(b.title())+")")
+                + "<br><b>Member:</b> " + l.memberId + (m==null? "" : " ("+escape(m.name)+")")
                 + "<br><b>Issued:</b> " + days + " days ago"
                 + "<br><b>Days Left:</b> <span style='color:"+(left<0?"red":"green")+"'>" + left + "</span>"
                 + "<br><b>Fine:</b> <span style='color:"+(fine>0?"red":"black")+"'>₹" + fine + "</span>"
@@ -429,87 +634,127 @@ public class LibraryAWT extends JFrame {
         JOptionPane.showMessageDialog(this,new JLabel(msg),"Loan Details",JOptionPane.INFORMATION_MESSAGE);
     }
 
+    private void showOverdue(){
+        FineEngine.Reading r = fines.now();
+        List<Loan> late = fines.overdue(r), soon = fines.dueWithin(r, 5);
+        StringBuilder sb = new StringBuilder("<html><b>Overdue loans:</b> "+late.size()+"<br><b>Due within 5 days:</b> "+soon.size());
+        Map<String,Integer> byMember = fines.finesByMember(r);
+        if(!byMember.isEmpty()){
+            sb.append("<br><br><b>Outstanding fines by member</b>");
+            byMember.entrySet().stream().sorted(Map.Entry.<String,Integer>comparingByValue().reversed()).limit(15)
+                    .forEach(e -> { Member m = store.member(e.getKey()); sb.append("<br>").append(escape(e.getKey())).append(m==null? "" : " ("+escape(m.name)+")").append(": ₹").append(e.getValue()); });
+            if(byMember.size()>15) sb.append("<br>… and ").append(byMember.size()-15).append(" more");
+        }
+        JOptionPane.showMessageDialog(this, new JLabel(sb.append("</html>").toString()), "Overdue Loans", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // counts are kept up to date by the loan history, so this only reads the top entries
+    private void showPopular(){
+        YearMonth month = YearMonth.now();
+        StringBuilder sb = new StringBuilder("<html><b>Most borrowed titles</b>");
+        List<LoanHistory.Count> top = core.history.topBooks(10);
+        if(top.isEmpty()) sb.append("<br>No loans yet.");
+        for(LoanHistory.Count c: top){ Book b = store.book(c.id()); sb.append("<br>").append(escape(b==null? c.id() : b.title())).append(": ").append(c.count()); }
+        sb.append("<br><br><b>Most active members, ").append(month).append("</b>");
+        List<LoanHistory.Count> active = core.history.topMembers(month, 10);
+        if(active.isEmpty()) sb.append("<br>No loans this month.");
+        for(LoanHistory.Count c: active){ Member m = store.member(c.id()); sb.append("<br>").append(escape(c.id())).append(m==null? "" : " ("+escape(m.name)+")").append(": ").append(c.count()); }
+        sb.append("<br><br>").append(core.history.returnedLoans()).append(" returned loans in the history");
+        JOptionPane.showMessageDialog(this, new JLabel(sb.append("</html>").toString()), "Circulation", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     // ---------------- utility ----------------
     private int parseIntOrDefault(String s, int def){ try{return Integer.parseInt(s);}catch(Exception e){return def;} }
-    private Book findBook(String id){ for(Book b: books) if(b.id.equals(id)) return b; return null; }
-    private Member findMember(String id){ for(Member m: members) if(m.id.equals(id)) return m; return null; }
-    private Loan findLoan(String id){ for(Loan l: loans) if(l.loanId.equals(id)) return l; return null; }
+    private String joinIds(Collection<Loan> ls, Function<Loan,String> id){ return ls.isEmpty()? "—" : escape(ls.stream().map(id).collect(Collectors.joining(", "))); }
     private String shortId(String id){ if(id==null) return ""; return id.length()<=8? id : id.substring(0,8)+"..."; }
     private String escape(String s){ if(s==null) return ""; return s.replaceAll("&","&amp;").replaceAll("<","&lt;").replaceAll(">","&gt;"); }
     private String indexToLetters(int index){ StringBuilder sb=new StringBuilder(); while(index>0){ index--; sb.insert(0,(char)('A'+(index%26))); index/=26; } return sb.toString(); }
 
-    private void updateAfterChange(){ refreshAll(); saveData(); }
+    // ---------------- Change handling ----------------
+    // desks and imports mutate the store from their own threads; the pages are only touched on the EDT
+    // changes from other threads (HTTP requests, imports, the snapshot thread) are queued and applied together by one
+    // queued EDT task, so thousands of kiosk borrows per second cost one page update per pass of the event queue
+    private void showChangesOnEdt(List<Change> changes){
+        if(SwingUtilities.isEventDispatchThread()){ drainChanges(); showChanges(changes); return; } // queued ones happened first
+        pendingChanges.add(changes);
+        if(drainQueued.compareAndSet(false, true)) SwingUtilities.invokeLater(this::drainChanges);
+    }
 
-    // ---------------- Persistence ----------------
-    @SuppressWarnings("unchecked")
-    private boolean loadData(){
-        File f = new File(DATA_FILE_NAME); if(!f.exists()) return false;
-        try(ObjectInputStream ois=new ObjectInputStream(new FileInputStream(f))){
-            Object o1=ois.readObject(), o2=ois.readObject(), o3=ois.readObject();
-            if(o1 instanceof List && o2 instanceof List && o3 instanceof List){ books=(List<Book>)o1; members=(List<Member>)o2; loans=(List<Loan>)o3; return true; }
-        }catch(Exception ex){ System.err.println("Load failed: "+ex.getMessage()); }
-        return false;
+    private void drainChanges(){
+        drainQueued.set(false);
+        List<Change> all = new ArrayList<>();
+        for(List<Change> c; (c = pendingChanges.poll())!=null; ) all.addAll(c);
+        if(!all.isEmpty()) showChanges(all);
     }
 
-    private boolean saveData(){
-        try(ObjectOutputStream oos=new ObjectOutputStream(new FileOutputStream(DATA_FILE_NAME))){
-            oos.writeObject(books); oos.writeObject(members); oos.writeObject(loans); oos.flush(); return true;
-        }catch(Exception ex){ System.err.println("Save failed: "+ex.getMessage()); return false; }
+    // applies one batch of store changes to the pages: only the affected rows are touched, and a page
+    // showing search results is re-filtered once per batch
+    private void showChanges(List<Change> changes){
+        if(importing) return;
+        if(changes.stream().anyMatch(c -> c.kind==Kind.RELOAD)){ refreshAll(); return; }
+        boolean books = builtPages.contains("Books"), members = builtPages.contains("Members"), loans = builtPages.contains("Loans"); // an unbuilt page is filled when first shown
+        if(changes.size() > ROW_EVENTS_PER_REFRESH){ refreshAll(); return; } // one reload is cheaper than patching row by row
+        boolean bookHit=false, memberHit=false, loanHit=false;
+        Set<Book> goneBooks = Collections.newSetFromMap(new IdentityHashMap<>()); Set<Member> goneMembers = Collections.newSetFromMap(new IdentityHashMap<>()); Set<Loan> goneLoans = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Change c: changes){
+            if(c.entity instanceof Book b){ if(!books) continue; bookHit=true; if(bookQuery==null) applyRow(bookRows, goneBooks, c.kind, b); }
+            else if(c.entity instanceof Member m){ if(!members) continue; memberHit=true; if(memberQuery==null) applyRow(memberRows, goneMembers, c.kind, m); }
+            else if(c.entity instanceof Loan l){ if(!loans) continue; loanHit=true; if(loanQuery==null) applyRow(loanRows, goneLoans, c.kind, l); }
+        }
+        bookRows.removeAll(goneBooks); memberRows.removeAll(goneMembers); loanRows.removeAll(goneLoans);
+        if(bookHit){ if(bookQuery!=null) refreshBookList(bookQuery); else syncEmptyView(bookScroll, bookCardList, bookRows, bookEmpty); }
+        if(memberHit){ if(memberQuery!=null) refreshMemberList(memberQuery); else syncEmptyView(memberScroll, memberCardList, memberRows, memberEmpty); }
+        if(loanHit){ loanClock = fines.now(); if(loanQuery!=null) refreshLoanList(loanQuery); else syncEmptyView(loanScroll, loanCardList, loanRows, loanEmpty); }
     }
 
+    // deletions are collected in gone and dropped in one pass after the batch (a batch of returns would otherwise
+    // shift the loan rows once per return); a row inserted again after its deletion flushes them first
+    private <T> void applyRow(RowListModel<T> model, Set<T> gone, Kind kind, T row){
+        switch(kind){
+            case INSERT -> { if(gone.contains(row)){ model.removeAll(gone); gone.clear(); } model.add(row); }
+            case UPDATE -> { if(!gone.contains(row)) model.changed(row); }
+            case DELETE -> gone.add(row);
+            default -> {}
+        }
+    }
+
+    // ---------------- Persistence ----------------
+    // off the EDT: the snapshot thread writes it while the window comes up
+    private void saveData(){ core.snapshotLater(); }
+
     // ---------------- Sample data ----------------
+    // -Dlibrary.seedTitles=N starts an empty library with a generated one of N titles instead, to try the app at scale
+    private void seed(){
+        int titles = Integer.getInteger("library.seedTitles", 0);
+        if(titles <= 0){ store.batch(this::seedSampleData); return; }
+        new WorkloadGenerator(titles, Math.max(1, titles/5), WorkloadGenerator.SKEW, 42).fill(store, Math.max(1, titles/10), 6, System.currentTimeMillis(), 43);
+    }
+
     private void seedSampleData(){
-        books.clear(); members.clear(); loans.clear();
-        books.add(new Book("B001","Clean Code","Robert C. Martin",2008,3));
-        books.add(new Book("B002","The Silent Patient","Alex Michaelides",2019,2));
-        books.add(new Book("B003","Design Patterns","Gamma et al.",1994,1));
-        books.add(new Book("B004","Introduction to Algorithms","CLRS",2009,4));
-        books.add(new Book("B005","The Pragmatic Programmer","Andrew Hunt",1999,3));
-        books.add(new Book("B006","Head First Java","Kathy Sierra",2005,5));
-        books.add(new Book("B007","Effective Java","Joshua Bloch",2017,3));
-        books.add(new Book("B008","Rich Dad Poor Dad","Robert Kiyosaki",1997,4));
-        books.add(new Book("B009","Atomic Habits","James Clear",2018,6));
-        books.add(new Book("B010","Harry Potter and the Sorcerer's Stone","J.K. Rowling",1997,5));
-        books.add(new Book("B011","The Alchemist","Paulo Coelho",1988,4));
-        books.add(new Book("B012","The Power of Your Subconscious Mind","Joseph Murphy",1963,3));
-        books.add(new Book("B013","Java: The Complete Reference","Herbert Schildt",2021,2));
-        books.add(new Book("B014","Sapiens: A Brief History of Humankind","Yuval Noah Harari",2011,3));
-        books.add(new Book("B015","The Psychology of Money","Morgan Housel",2020,5));
-        members.add(new Member("M01","Aisha Khan")); members.add(new Member("M02","Rohan Verma")); members.add(new Member("M03","Priya Shah"));
+        store.clear();
+        store.addBook(new Book("B001","Clean Code","Robert C. Martin",2008,3));
+        store.addBook(new Book("B002","The Silent Patient","Alex Michaelides",2019,2));
+        store.addBook(new Book("B003","Design Patterns","Gamma et al.",1994,1));
+        store.addBook(new Book("B004","Introduction to Algorithms","CLRS",2009,4));
+        store.addBook(new Book("B005","The Pragmatic Programmer","Andrew Hunt",1999,3));
+        store.addBook(new Book("B006","Head First Java","Kathy Sierra",2005,5));
+        store.addBook(new Book("B007","Effective Java","Joshua Bloch",2017,3));
+        store.addBook(new Book("B008","Rich Dad Poor Dad","Robert Kiyosaki",1997,4));
+        store.addBook(new Book("B009","Atomic Habits","James Clear",2018,6));
+        store.addBook(new Book("B010","Harry Potter and the Sorcerer's Stone","J.K. Rowling",1997,5));
+        store.addBook(new Book("B011","The Alchemist","Paulo Coelho",1988,4));
+        store.addBook(new Book("B012","The Power of Your Subconscious Mind","Joseph Murphy",1963,3));
+        store.addBook(new Book("B013","Java: The Complete Reference","Herbert Schildt",2021,2));
+        store.addBook(new Book("B014","Sapiens: A Brief History of Humankind","Yuval Noah Harari",2011,3));
+        store.addBook(new Book("B015","The Psychology of Money","Morgan Housel",2020,5));
+        store.addMember(new Member("M01","Aisha Khan")); store.addMember(new Member("M02","Rohan Verma")); store.addMember(new Member("M03","Priya Shah"));
 
         // Example loan: create one real-time and one older to show fine calculation in sample
-        loans.add(new Loan(UUID.randomUUID().toString(),"B001","M01"));
-        Book b = findBook("B001"); if(b!=null) b.available = Math.max(0,b.available-1);
+        store.borrow(new Loan(UUID.randomUUID().toString(),"B001","M01"));
 
         // create an older loan (e.g., 40 days ago) to demonstrate overdue fine in sample
         long fortyDaysMs = System.currentTimeMillis() - (40L * 24 * 60 * 60 * 1000);
-        loans.add(new Loan(UUID.randomUUID().toString(),"B002","M02", fortyDaysMs));
-        Book b2 = findBook("B002"); if(b2!=null) b2.available = Math.max(0,b2.available-1);
-    }
-
-    // ---------------- Date & fine utilities ----------------
-    /**
-     * Returns number of whole days elapsed since timeMs to now.
-     */
-    private int daysSince(long timeMs){
-        long diff = System.currentTimeMillis() - timeMs;
-        return (int)(diff / (1000L*60*60*24));
-    }
-
-    /**
-     * Fine rule: first 30 days free; every day beyond 30 costs ₹2 per day.
-     */
-    private int fineForLoan(Loan l){
-        int days = daysSince(l.issueDate);
-        return days > 30 ? (days - 30) * 2 : 0;
-    }
-
-    /**
-     * Days left from 30-day allowance (can be negative if overdue).
-     */
-    private int daysLeft(Loan l){
-        int d = daysSince(l.issueDate);
-        return 30 - d;
+        store.borrow(new Loan(UUID.randomUUID().toString(),"B002","M02", fortyDaysMs));
     }
 
     // ---------------- main ----------------
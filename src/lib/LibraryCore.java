@@ -0,0 +1,169 @@
+package lib;
+
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The library without a window: store, fine engine, search indexes, journal and loan history wired together.
+ *
+ * Every front end (the Swing frame, a checkout terminal, a background import) works against one core;
+ * all of its parts may be called from any thread. Snapshots requested by the journal run on their own
+ * thread, because the store has to be exclusive for the cut and the mutating thread that noticed the
+ * journal growing still holds a stripe.
+ *
+ * Journal durability is chosen with {@code -Dlibrary.durability=sync|group|periodic} (default group) and
+ * {@code -Dlibrary.commitWindowMs} (default {@value #COMMIT_WINDOW_MS}); see {@link LibraryJournal.Durability}.
+ */
+final class LibraryCore {
+    final LibraryStore store = new LibraryStore();
+    final FineEngine fines = new FineEngine(store, FinePolicy.DEFAULT); // due-date index + fine rule
+    final LibraryStats stats = new LibraryStats(store, fines); // dashboard counters
+    // search indexes over book title/author/id, member name/id and loan/book/member ids
+    final SearchIndex<Book> bookIndex = new SearchIndex<>();
+    final SearchIndex<Member> memberIndex = new SearchIndex<>();
+    final SearchIndex<Loan> loanIndex = new SearchIndex<>();
+    final LoanHistory history; // returned loans by month + circulation counts; lives next to the snapshot
+    private final LibraryJournal journal;
+    static final long COMMIT_WINDOW_MS = 5;
+
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "library-snapshot"); t.setDaemon(true); return t;
+    });
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+    private final AtomicInteger imports = new AtomicInteger(); // running bulk imports; they snapshot once when done
+
+    LibraryCore(String snapshotName, String legacyName, String journalName, int snapshotEvery){
+        this(snapshotName, legacyName, journalName, snapshotEvery,
+             LibraryJournal.Durability.parse(System.getProperty("library.durability"), LibraryJournal.Durability.GROUP),
+             Long.getLong("library.commitWindowMs", COMMIT_WINDOW_MS));
+    }
+
+    LibraryCore(String snapshotName, String legacyName, String journalName, int snapshotEvery, LibraryJournal.Durability durability, long commitWindowMs){
+        journal = new LibraryJournal(snapshotName, legacyName, journalName, snapshotEvery, durability, commitWindowMs);
+        history = new LoanHistory(store, Path.of(snapshotName).toAbsolutePath().resolveSibling("library_history"));
+        store.addListener(fines); store.addListener(stats); store.addListener(this::indexChanges);
+    }
+
+    // ---------------- Persistence ----------------
+    /** Loads snapshot + journal as one batch. Returns false when there is nothing on disk yet (or it could not be read). */
+    boolean load(){
+        Metrics.Sample timing = Metrics.start(Metrics.Op.LOAD);
+        store.beginBatch(); // one RELOAD for the snapshot plus any replayed journal records
+        try {
+            return journal.load(new LibraryJournal.Target(){
+                public void restore(List<Book> b, List<Member> m, List<Loan> l){ store.restore(b, m, l); }
+                public void addBook(Book b){ store.addBook(b); }
+                public void addMember(Member m){ store.addMember(m); }
+                public void borrow(Loan l){ store.borrow(l); }
+                public void returned(String loanId){ store.returnLoan(loanId); }
+            });
+        } catch(Exception ex){ System.err.println("Load failed: "+ex.getMessage()); return false; }
+        finally { store.endBatch(); Metrics.stop(timing); }
+    }
+
+    /** True after loading from the old serialized file, until a binary snapshot has been written. */
+    boolean migrationPending(){ return journal.migrationPending(); }
+
+    /**
+     * Starts journaling every change and recording returns in the loan history; call once loading (and any seeding)
+     * is done, so replayed records are not journaled or recorded again.
+     */
+    void startJournal(){
+        try { history.open(); } catch(IOException ex){ System.err.println("Loan history unreadable: "+ex.getMessage()); }
+        store.addListener(journal); store.addListener(history); store.addListener(this::snapshotIfDue);
+    }
+
+    /** Takes a snapshot now, on the calling thread. */
+    void snapshot() throws IOException {
+        Metrics.Sample timing = Metrics.start(Metrics.Op.SAVE);
+        try {
+            long[] seq = new long[1];
+            LibraryStore.Cut cut;
+            try { cut = store.cut(() -> { try { seq[0] = journal.rotate(); } catch(IOException ex){ throw new UncheckedIOException(ex); } }); }
+            catch(UncheckedIOException ex){ throw ex.getCause(); }
+            journal.snapshot(seq[0], cut.books, cut.members, cut.loans);
+        } finally { Metrics.stop(timing); }
+        try { history.compact(); } catch(IOException ex){ System.err.println("Loan history compaction failed: "+ex.getMessage()); } // no-op until a month has passed
+    }
+
+    /**
+     * Streams a CSV / JSON Lines file of books and members into the store (see {@link BulkImport}) and persists it
+     * with one snapshot at the end: imported rows are not journaled, so a large dump costs no journal writes or fsyncs
+     * of its own. Automatic snapshots are held back meanwhile, since each one rewrites the whole store. Until that
+     * snapshot is written the import is not durable; after a crash it is simply run again (loans desks opened on
+     * imported titles in the meantime are dropped on replay, as their titles are unknown).
+     */
+    BulkImport.Report importFile(Path file, BulkImport.Progress progress, AtomicBoolean cancel) throws IOException {
+        Metrics.Sample timing = Metrics.start(Metrics.Op.IMPORT);
+        imports.incrementAndGet();
+        try {
+            BulkImport.Report r;
+            try { r = new BulkImport(store, Runtime.getRuntime().availableProcessors(), chunk -> journal.unjournaled(() -> store.batch(chunk))).run(file, progress, cancel); }
+            catch(IOException | RuntimeException ex){
+                // rows committed before the failure are in the store; try to persist them without hiding the real error
+                try { snapshot(); } catch(IOException | RuntimeException snap){ ex.addSuppressed(snap); }
+                throw ex;
+            } finally { imports.decrementAndGet(); }
+            snapshot();
+            return r;
+        } finally { Metrics.stop(timing); }
+    }
+
+    /** Queues a snapshot on the snapshot thread and returns at once (at most one is queued at a time). */
+    void snapshotLater(){
+        if(!snapshotQueued.compareAndSet(false, true)) return;
+        try {
+            snapshotter.execute(() -> {
+                snapshotQueued.set(false);
+                try { snapshot(); } catch(IOException ex){ System.err.println("Save failed: "+ex.getMessage()); }
+            });
+        } catch(RejectedExecutionException ex){ snapshotQueued.set(false); } // closing: the journal still has every record
+    }
+
+    // the mutation itself is already journaled; only fold the journal into a snapshot now and then
+    private void snapshotIfDue(List<Change> changes){
+        if(imports.get()==0 && journal.snapshotDue()) snapshotLater();
+    }
+
+    /** Waits for a queued snapshot, flushes and fsyncs journal records still in the commit window and closes the journal. Safe to call twice. */
+    void close(){
+        snapshotter.shutdown();
+        try { snapshotter.awaitTermination(30, TimeUnit.SECONDS); } catch(InterruptedException ex){ Thread.currentThread().interrupt(); }
+        journal.close(); history.close();
+    }
+
+    // ---------------- Search indexes ----------------
+    // keeps the search indexes in step with the store
+    private void indexChanges(List<Change> changes){
+        for(Change c: changes){
+            if(c.kind==Kind.RELOAD){ rebuildSearchIndexes(); return; }
+            if(c.kind==Kind.INSERT){
+                if(c.entity instanceof Book b) indexBook(b);
+                else if(c.entity instanceof Member m) indexMember(m);
+                else if(c.entity instanceof Loan l) indexLoan(l);
+            } else if(c.kind==Kind.DELETE && c.entity instanceof Loan l) loanIndex.remove(l);
+        }
+    }
+
+    private void indexBook(Book b){ bookIndex.add(b, b.title(), b.author(), b.id()); }
+    private void indexMember(Member m){ memberIndex.add(m, m.name, m.id); }
+    private void indexLoan(Loan l){ loanIndex.add(l, l.loanId, l.bookId, l.memberId); }
+
+    private void rebuildSearchIndexes(){
+        bookIndex.clear(); memberIndex.clear(); loanIndex.clear();
+        for(Book b: store.books()) indexBook(b);
+        for(Member m: store.members()) indexMember(m);
+        for(Loan l: store.loans()) indexLoan(l);
+    }
+}
@@ -0,0 +1,286 @@
+package lib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * JSON over HTTP for kiosks, OPAC terminals and self-checkout stations, on the JDK's built-in server.
+ *
+ * Every request runs on its own virtual thread against the same {@link LibraryCore} as the window, so a
+ * borrow from a kiosk goes through the store's stripe locks, the journal and the listeners exactly like one
+ * from the Borrow dialog, and the Swing pages pick it up as a store event. Store, search indexes and fine
+ * engine only use j.u.c locks on these paths, so a blocked request parks its virtual thread instead of a
+ * carrier. (With {@code -Dlibrary.durability=sync} the fsync runs inside a monitor and does pin one.)
+ *
+ * Latency is bounded by admission rather than by queueing: at most {@code maxInFlight} requests are
+ * handled at once and the rest are answered 503 with Retry-After straight away. Searches need three or
+ * more characters (shorter ones scan every distinct term), return at most {@value #MAX_LIMIT} rows and
+ * only order the rows they return.
+ *
+ * <pre>
+ * GET  /api/books?q=&amp;offset=&amp;limit=     search (or page through) the catalog
+ * GET  /api/books/{id}                     one title, with copies on the shelf and the next due date
+ * GET  /api/members?q=&amp;offset=&amp;limit=   search members
+ * GET  /api/members/{id}                   one member, with open loans and outstanding fine
+ * POST /api/loans    {"bookId","memberId"}  borrow: 201, 404 unknown book/member, 409 no copy left
+ * POST /api/returns  {"loanId"} or {"bookId"[,"memberId"]}  return; a book id closes its oldest open loan
+ * GET  /api/overdue?offset=&amp;limit=        overdue loans, oldest first; "more" instead of a total, which would mean
+ *                                          walking every overdue loan
+ * </pre>
+ *
+ * Started by the window with {@code -Dlibrary.httpPort=8080} (and {@code -Dlibrary.httpMaxInFlight}), or
+ * without one by {@link #main}. Bound to the loopback interface unless {@code -Dlibrary.httpHost} says otherwise.
+ */
+final class LibraryHttpApi {
+    static final int MAX_IN_FLIGHT = 4096, DEFAULT_LIMIT = 50, MAX_LIMIT = 500, MAX_BODY = 16 * 1024;
+    private static final int BACKLOG = 4096, MIN_QUERY = 3;
+
+    private record Reply(int status, String body){}
+
+    private final LibraryCore core;
+    private final LibraryStore store;
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlight;
+
+    LibraryHttpApi(LibraryCore core, InetSocketAddress address, int maxInFlight) throws IOException {
+        this.core = core; this.store = core.store; this.inFlight = new Semaphore(maxInFlight);
+        server = HttpServer.create(address, BACKLOG);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(handlers);
+    }
+
+    /** Starts serving on the configured port, or returns null when {@code library.httpPort} is not set. */
+    static LibraryHttpApi startIfConfigured(LibraryCore core) throws IOException {
+        int port = Integer.getInteger("library.httpPort", 0);
+        if(port <= 0) return null;
+        LibraryHttpApi api = new LibraryHttpApi(core, new InetSocketAddress(System.getProperty("library.httpHost", "127.0.0.1"), port), Integer.getInteger("library.httpMaxInFlight", MAX_IN_FLIGHT));
+        api.start();
+        return api;
+    }
+
+    void start(){ server.start(); }
+    int port(){ return server.getAddress().getPort(); }
+
+    /** Stops accepting, gives running requests up to a second, then stops their threads. */
+    void stop(){ server.stop(1); handlers.shutdownNow(); }
+
+    // ---------------- Dispatch ----------------
+    private void handle(HttpExchange ex){
+        try(ex){
+            if(!inFlight.tryAcquire()){ ex.getResponseHeaders().set("Retry-After", "1"); send(ex, error(503, "busy, retry shortly")); return; }
+            Metrics.Sample timing = Metrics.start(Metrics.Op.HTTP);
+            try { send(ex, route(ex)); }
+            finally { inFlight.release(); Metrics.stop(timing); }
+        } catch(IOException ignored){ } // the client went away
+    }
+
+    private Reply route(HttpExchange ex) throws IOException {
+        String method = ex.getRequestMethod();
+        String[] path = ex.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String,String> q = query(ex.getRequestURI().getRawQuery());
+        try {
+            String res = path[0], id = path.length > 1? path[1] : null;
+            if(path.length > 2) return error(404, "no such resource");
+            switch(res){
+                case "books" -> { if(!method.equals("GET")) return error(405, "use GET"); return id==null? searchBooks(q) : book(id); }
+                case "members" -> { if(!method.equals("GET")) return error(405, "use GET"); return id==null? searchMembers(q) : member(id); }
+                case "overdue" -> { if(!method.equals("GET") || id!=null) return error(405, "use GET /api/overdue"); return overdue(q); }
+                case "loans" -> { if(!method.equals("POST") || id!=null) return error(405, "use POST /api/loans"); return borrow(body(ex)); }
+                case "returns" -> { if(!method.equals("POST") || id!=null) return error(405, "use POST /api/returns"); return giveBack(body(ex)); }
+                default -> { return error(404, "no such resource"); }
+            }
+        } catch(IllegalArgumentException bad){ return error(400, bad.getMessage()); }
+    }
+
+    // ---------------- Catalog and members ----------------
+    private Reply searchBooks(Map<String,String> q){
+        String text = q.get("q"); int offset = intParam(q, "offset", 0), limit = limit(q);
+        List<Book> page; int total;
+        if(text==null || text.isBlank()){ total = store.bookCount(); page = store.books(offset, limit); }
+        else { SearchIndex.Page<Book> hits = core.bookIndex.match(searchText(text), offset, limit); total = hits.total; page = hits.rows; }
+        StringBuilder sb = new StringBuilder("{\"total\":").append(total).append(",\"books\":[");
+        for(int i=0; i<page.size(); i++){ if(i>0) sb.append(','); book(sb, page.get(i)); sb.append('}'); }
+        return ok(sb.append("]}"));
+    }
+
+    private Reply book(String id){
+        Book b = store.book(id);
+        if(b==null) return error(404, "unknown book "+id);
+        long nextDue = Long.MAX_VALUE;
+        for(Loan l: store.loansForBook(id)) nextDue = Math.min(nextDue, due(l));
+        StringBuilder sb = new StringBuilder(); book(sb, b);
+        sb.append(",\"nextDue\":"); if(nextDue==Long.MAX_VALUE) sb.append("null"); else str(sb, Instant.ofEpochMilli(nextDue).toString());
+        return ok(sb.append('}'));
+    }
+
+    private Reply searchMembers(Map<String,String> q){
+        String text = q.get("q"); int offset = intParam(q, "offset", 0), limit = limit(q);
+        List<Member> page; int total;
+        if(text==null || text.isBlank()){ List<Member> all = store.members(); total = all.size(); page = slice(all, offset, limit); }
+        else { SearchIndex.Page<Member> hits = core.memberIndex.match(searchText(text), offset, limit); total = hits.total; page = hits.rows; }
+        StringBuilder sb = new StringBuilder("{\"total\":").append(total).append(",\"members\":[");
+        for(int i=0; i<page.size(); i++){ if(i>0) sb.append(','); member(sb, page.get(i)); sb.append('}'); }
+        return ok(sb.append("]}"));
+    }
+
+    private Reply member(String id){
+        Member m = store.member(id);
+        if(m==null) return error(404, "unknown member "+id);
+        FineEngine.Reading r = core.fines.now();
+        List<Loan> loans = new ArrayList<>(store.loansForMember(id));
+        loans.sort(Comparator.comparingLong(l -> l.issueDate));
+        StringBuilder sb = new StringBuilder(); member(sb, m);
+        sb.append(",\"fine\":").append(core.fines.fineForMember(r, id)).append(",\"loans\":[");
+        for(int i=0; i<loans.size(); i++){ if(i>0) sb.append(','); loan(sb, loans.get(i), r); }
+        return ok(sb.append("]}"));
+    }
+
+    // ---------------- Circulation ----------------
+    private Reply borrow(Map<String,String> body){
+        String bookId = field(body, "bookid"), memberId = field(body, "memberid");
+        if(bookId==null || memberId==null) return error(400, "bookId and memberId are required");
+        if(store.book(bookId)==null) return error(404, "unknown book "+bookId);
+        if(store.member(memberId)==null) return error(404, "unknown member "+memberId);
+        Loan l = new Loan(UUID.randomUUID().toString(), bookId, memberId);
+        if(!store.borrow(l)) return error(409, "no copy of "+bookId+" available");
+        StringBuilder sb = new StringBuilder(); loan(sb, l, core.fines.now());
+        return new Reply(201, sb.toString());
+    }
+
+    private Reply giveBack(Map<String,String> body){
+        String loanId = field(body, "loanid"), bookId = field(body, "bookid"), memberId = field(body, "memberid");
+        Loan l;
+        if(loanId!=null){
+            l = store.returnLoan(loanId);
+            if(l==null) return error(404, "no open loan "+loanId);
+        } else if(bookId!=null){
+            if(store.book(bookId)==null) return error(404, "unknown book "+bookId);
+            if(memberId!=null && store.member(memberId)==null) return error(404, "unknown member "+memberId);
+            do { // another desk may close the loan first; then take the next one
+                Loan oldest = CirculationSession.oldestOpen(store, bookId, memberId, Collections.emptySet());
+                if(oldest==null) return error(409, memberId==null? "book is not on loan" : "book is not on loan to "+memberId);
+                l = store.returnLoan(oldest.loanId);
+            } while(l==null);
+        } else return error(400, "loanId or bookId is required");
+        FineEngine.Reading r = core.fines.now();
+        StringBuilder sb = new StringBuilder("{\"returned\":"); loan(sb, l, r);
+        return ok(sb.append(",\"fine\":").append(r.fine(l)).append('}'));
+    }
+
+    private Reply overdue(Map<String,String> q){
+        FineEngine.Reading r = core.fines.now();
+        List<Loan> page = new ArrayList<>();
+        boolean more = core.fines.overdue(r, intParam(q, "offset", 0), limit(q), page); // walks the ordered index from offset only
+        StringBuilder sb = new StringBuilder("{\"asOf\":"); str(sb, Instant.ofEpochMilli(r.nowMs).toString());
+        sb.append(",\"more\":").append(more).append(",\"loans\":[");
+        for(int i=0; i<page.size(); i++){ if(i>0) sb.append(','); loan(sb, page.get(i), r); }
+        return ok(sb.append("]}"));
+    }
+
+    private long due(Loan l){ return l.issueDate + core.fines.policy().loanDays() * FineEngine.DAY_MS; }
+
+    // ---------------- JSON ----------------
+    // the object is left open so callers can add fields
+    private static void book(StringBuilder sb, Book b){
+        sb.append("{\"id\":"); str(sb, b.id()); sb.append(",\"title\":"); str(sb, b.title()); sb.append(",\"author\":"); str(sb, b.author());
+        sb.append(",\"year\":").append(b.year()).append(",\"total\":").append(b.total()).append(",\"available\":").append(b.available());
+    }
+
+    private static void member(StringBuilder sb, Member m){ sb.append("{\"id\":"); str(sb, m.id); sb.append(",\"name\":"); str(sb, m.name); }
+
+    private void loan(StringBuilder sb, Loan l, FineEngine.Reading r){
+        Book b = store.book(l.bookId);
+        sb.append("{\"loanId\":"); str(sb, l.loanId); sb.append(",\"bookId\":"); str(sb, l.bookId); sb.append(",\"title\":"); str(sb, b==null? null : b.title());
+        sb.append(",\"memberId\":"); str(sb, l.memberId); sb.append(",\"issued\":"); str(sb, Instant.ofEpochMilli(l.issueDate).toString());
+        sb.append(",\"due\":"); str(sb, Instant.ofEpochMilli(due(l)).toString());
+        sb.append(",\"daysOverdue\":").append(Math.max(0, -r.daysLeft(l))).append(",\"fine\":").append(r.fine(l)).append('}');
+    }
+
+    static void str(StringBuilder sb, String s){
+        if(s==null){ sb.append("null"); return; }
+        sb.append('"');
+        for(int i=0; i<s.length(); i++){
+            char c = s.charAt(i);
+            switch(c){
+                case '"' -> sb.append("\\\""); case '\\' -> sb.append("\\\\"); case '\n' -> sb.append("\\n"); case '\r' -> sb.append("\\r"); case '\t' -> sb.append("\\t");
+                default -> { if(c < 0x20) sb.append(String.format("\\u%04x", (int)c)); else sb.append(c); }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static Reply ok(StringBuilder body){ return new Reply(200, body.toString()); }
+    private static Reply error(int status, String message){ StringBuilder sb = new StringBuilder("{\"error\":"); str(sb, message); return new Reply(status, sb.append('}').toString()); }
+
+    // ---------------- Request parsing ----------------
+    private static Map<String,String> body(HttpExchange ex) throws IOException {
+        byte[] bytes;
+        try(InputStream in = ex.getRequestBody()){ bytes = in.readNBytes(MAX_BODY+1); }
+        if(bytes.length > MAX_BODY) throw new IllegalArgumentException("request body over "+MAX_BODY+" bytes");
+        return BulkImport.parseFlatJson(new String(bytes, StandardCharsets.UTF_8)); // keys come back lower-cased
+    }
+
+    private static Map<String,String> query(String raw){
+        Map<String,String> out = new HashMap<>();
+        if(raw==null) return out;
+        for(String pair: raw.split("&")){
+            int eq = pair.indexOf('=');
+            if(eq > 0) out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq+1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static String field(Map<String,String> body, String key){ String v = body.get(key); return v==null || v.isBlank()? null : v.trim(); }
+
+    private static String searchText(String q){
+        if(q.trim().length() < MIN_QUERY) throw new IllegalArgumentException("search needs at least "+MIN_QUERY+" characters");
+        return q;
+    }
+
+    private static int limit(Map<String,String> q){ return Math.min(MAX_LIMIT, Math.max(1, intParam(q, "limit", DEFAULT_LIMIT))); }
+
+    private static int intParam(Map<String,String> q, String name, int def){
+        String v = q.get(name);
+        if(v==null) return def;
+        try { return Math.max(0, Integer.parseInt(v.trim())); } catch(NumberFormatException ex){ throw new IllegalArgumentException(name+" must be a number"); }
+    }
+
+    private static <T> List<T> slice(List<T> all, int offset, int limit){ return offset >= all.size()? List.of() : all.subList(offset, Math.min(all.size(), offset+limit)); }
+
+    private static void send(HttpExchange ex, Reply r) throws IOException {
+        byte[] bytes = r.body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(r.status, bytes.length);
+        try(OutputStream out = ex.getResponseBody()){ out.write(bytes); }
+    }
+
+    // ---------------- Headless ----------------
+    /**
+     * Serves the library without a window, on the same data files as {@link LibraryAWT} (so run one or the
+     * other). Usage: {@code java lib.LibraryHttpApi [port]}
+     */
+    public static void main(String[] args) throws IOException {
+        LibraryCore core = new LibraryCore(LibraryAWT.DATA_FILE_NAME, LibraryAWT.LEGACY_DATA_FILE_NAME, LibraryAWT.JOURNAL_FILE_NAME, LibraryAWT.SNAPSHOT_EVERY);
+        if(!core.load() || core.migrationPending()) core.snapshotLater();
+        core.startJournal();
+        LibraryHttpApi api = new LibraryHttpApi(core, new InetSocketAddress(System.getProperty("library.httpHost", "127.0.0.1"), args.length>0? Integer.parseInt(args[0]) : Integer.getInteger("library.httpPort", 8080)),
+                Integer.getInteger("library.httpMaxInFlight", MAX_IN_FLIGHT));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> { api.stop(); core.close(); }, "library-shutdown"));
+        Metrics.registerMBean();
+        api.start();
+        System.out.println("Serving "+core.store.bookCount()+" titles and "+core.store.members().size()+" members on http://"+api.server.getAddress().getHostString()+":"+api.port()+"/api/");
+    }
+}
@@ -0,0 +1,353 @@
+package lib;
+
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal for the library store.
+ *
+ * Every mutation (add book, add member, borrow, return) is appended as one small framed record
+ * instead of re-serializing all three lists; the journal listens to the store and hands each batch of
+ * changes to the commit path chosen by {@link Durability}. Every {@code snapshotEvery} records the owner takes a
+ * snapshot ({@link SnapshotFormat}): at a consistent cut of the store the live journal is set aside
+ * ({@link #rotate()}), the snapshot is written without holding up new records, swapped in atomically, and
+ * only then is the set-aside journal deleted. Loading replays the set-aside journal (if a snapshot never
+ * finished) and then the live one.
+ * A store that only has the old Java-serialized file is read from it once and migrated by the next snapshot.
+ *
+ * Record frame: {@code int length, int crc32, payload}; payload starts with a sequence number so that
+ * records already covered by the snapshot are skipped on replay (a crash between snapshot and truncate
+ * can never apply a record twice). A torn or corrupt tail is cut off at the last good record.
+ */
+class LibraryJournal implements LibraryStore.Listener {
+    static final byte ADD_BOOK = 1, ADD_MEMBER = 2, BORROW = 3, RETURN = 4;
+    private static final int MAX_RECORD = 1 << 20;
+    static final int MAX_FIELD_BYTES = 65_535; // writeUTF's limit; the store refuses longer ids, titles, authors and names
+
+    /** When a journaled change is forced to disk, relative to the mutation that produced it. */
+    enum Durability {
+        /** Before the mutating call returns; concurrent callers share one fsync. Blocks the mutating thread on disk. */
+        SYNC,
+        /** On the writer thread, after collecting everything that arrives within the commit window: one write + one fsync per group. */
+        GROUP,
+        /** Written by the writer thread as it arrives, fsynced at most once per commit window (a crash loses at most one window). */
+        PERIODIC;
+
+        static Durability parse(String s, Durability def){
+            if(s==null || s.isBlank()) return def;
+            try { return valueOf(s.trim().toUpperCase(java.util.Locale.ROOT)); } catch(IllegalArgumentException ex){ return def; }
+        }
+    }
+
+    /** Receives the snapshot and then every journaled mutation, in order. */
+    interface Target {
+        void restore(List<Book> books, List<Member> members, List<Loan> loans);
+        void addBook(Book b);
+        void addMember(Member m);
+        void borrow(Loan l);
+        void returned(String loanId);
+    }
+
+    private final Path snapshotFile, legacyFile, journalFile, rotatedFile;
+    private final int snapshotEvery;
+    private final Durability durability;
+    private final long windowMs;
+    private final Object snapshotLock = new Object(); // one snapshot writer at a time
+    private final Object io = new Object(); // guards the channel and all file writes; taken before 'this'
+    private FileChannel channel;
+    private long seq, snapshotSeq;
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>(); // framed batches not yet written, in sequence order; guarded by this
+    private long writtenSeq, durableSeq; // guarded by io
+    private Thread writer;
+    private boolean closed; // guarded by this
+    private volatile int pending; // records appended since the last rotation
+    private volatile boolean migrationPending, snapshotNeeded;
+    private final ThreadLocal<Boolean> unjournaled = ThreadLocal.withInitial(() -> false);
+
+    LibraryJournal(String snapshotName, String legacyName, String journalName, int snapshotEvery){
+        this(snapshotName, legacyName, journalName, snapshotEvery, Durability.SYNC, 0);
+    }
+
+    LibraryJournal(String snapshotName, String legacyName, String journalName, int snapshotEvery, Durability durability, long windowMs){
+        this.snapshotFile = Paths.get(snapshotName); this.legacyFile = Paths.get(legacyName); this.journalFile = Paths.get(journalName); this.snapshotEvery = snapshotEvery;
+        this.rotatedFile = journalFile.resolveSibling(journalFile.getFileName()+".old");
+        this.durability = durability; this.windowMs = Math.max(0, windowMs);
+    }
+
+    // ---------------- Loading ----------------
+    /** Loads snapshot + journal into target. Returns false when there is nothing on disk yet. */
+    boolean load(Target target) throws IOException, ClassNotFoundException {
+        boolean found = false;
+        if(Files.exists(snapshotFile)){ snapshotSeq = SnapshotFormat.read(snapshotFile, target); found = true; }
+        else if(Files.exists(legacyFile)){ loadLegacy(target); found = migrationPending = true; }
+        seq = snapshotSeq;
+        if(Files.exists(rotatedFile)) found |= replay(rotatedFile, target); // a snapshot was interrupted after rotation
+        if(Files.exists(journalFile)) found |= replay(journalFile, target);
+        synchronized(io){ writtenSeq = durableSeq = seq; }
+        return found;
+    }
+
+    /** True after loading from the old serialized file, until a binary snapshot has been written. */
+    boolean migrationPending(){ return migrationPending; }
+
+    // the pre-binary store: three serialized lists, optionally preceded by the journal sequence number
+    @SuppressWarnings("unchecked")
+    private void loadLegacy(Target target) throws IOException, ClassNotFoundException {
+        try(ObjectInputStream ois=new LegacyInputStream(new BufferedInputStream(Files.newInputStream(legacyFile)))){
+            Object o1=ois.readObject();
+            if(o1 instanceof Long){ snapshotSeq=(Long)o1; o1=ois.readObject(); } // the oldest files have no sequence header
+            Object o2=ois.readObject(), o3=ois.readObject();
+            if(!(o1 instanceof List && o2 instanceof List && o3 instanceof List)) throw new InvalidObjectException("unexpected snapshot layout");
+            target.restore((List<Book>)o1, (List<Member>)o2, (List<Loan>)o3);
+        }
+    }
+
+    // legacy files name the entities as classes nested in LibraryAWT; member and loan fields and serialVersionUIDs are unchanged
+    private static final class LegacyInputStream extends ObjectInputStream {
+        LegacyInputStream(InputStream in) throws IOException { super(in); }
+        @Override protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass d = super.readClassDescriptor();
+            return switch(d.getName()){
+                case "lib.LibraryAWT$Book", "lib.Book" -> ObjectStreamClass.lookup(LegacyBook.class);
+                case "lib.LibraryAWT$Member" -> ObjectStreamClass.lookup(Member.class);
+                case "lib.LibraryAWT$Loan" -> ObjectStreamClass.lookup(Loan.class);
+                default -> d;
+            };
+        }
+    }
+
+    // the serialized layout of Book from before it became a catalog view; resolves to a detached Book
+    private static final class LegacyBook implements Serializable {
+        private static final long serialVersionUID = -3566991987321584252L;
+        String id, title, author; int year, total, available;
+        private Object readResolve(){ Book b = new Book(id, title, author, year, total); b.setAvailable(available); return b; }
+    }
+
+    private boolean replay(Path file, Target target) throws IOException {
+        boolean any = false;
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+            long good = 0, size = ch.size();
+            while(good + 8 <= size){
+                int len = in.readInt(), crc = in.readInt();
+                if(len <= 0 || len > MAX_RECORD || good + 8 + len > size) break;
+                byte[] payload = new byte[len]; in.readFully(payload);
+                if(crc(payload) != crc) break;
+                DataInputStream rec = new DataInputStream(new ByteArrayInputStream(payload));
+                long s = rec.readLong();
+                if(s > snapshotSeq){ apply(rec, target); seq = s; pending++; any = true; }
+                good += 8 + len;
+            }
+            if(good < size){ System.err.println("Journal "+file.getFileName()+": dropping "+(size-good)+" bytes of torn/corrupt tail"); ch.truncate(good); ch.force(true); }
+        }
+        return any;
+    }
+
+    private void apply(DataInputStream rec, Target target) throws IOException {
+        byte type = rec.readByte();
+        switch(type){
+            case ADD_BOOK -> { Book b = new Book(rec.readUTF(), rec.readUTF(), rec.readUTF(), rec.readInt(), rec.readInt()); b.setAvailable(rec.readInt()); target.addBook(b); }
+            case ADD_MEMBER -> target.addMember(new Member(rec.readUTF(), rec.readUTF()));
+            case BORROW -> target.borrow(new Loan(rec.readUTF(), rec.readUTF(), rec.readUTF(), rec.readLong()));
+            case RETURN -> target.returned(rec.readUTF());
+            default -> throw new IOException("unknown journal record type "+type);
+        }
+    }
+
+    // ---------------- Appending ----------------
+    /** Journals one batch of store changes; how long the caller waits for the disk depends on {@link Durability}. */
+    @Override public void storeChanged(List<Change> changes){
+        if(unjournaled.get()) return;
+        try {
+            long upTo = append(changes);
+            if(upTo > 0 && durability==Durability.SYNC) flush(upTo, true);
+        } catch(IOException ex){ System.err.println("Journal write failed: "+ex.getMessage()); snapshotNeeded = true; }
+    }
+
+    /**
+     * Runs {@code r} with the changes it makes on this thread left out of the journal (a bulk import, whose rows
+     * would only duplicate the snapshot taken after it). Marks a snapshot as due, since nothing else records them.
+     */
+    void unjournaled(Runnable r){
+        unjournaled.set(true);
+        try { r.run(); } finally { unjournaled.set(false); snapshotNeeded = true; }
+    }
+
+    /** True once enough records piled up (or the journal could not keep up) that the caller should take a snapshot. */
+    boolean snapshotDue(){ return snapshotNeeded || pending >= snapshotEvery; }
+
+    // frames the batch and queues it; returns the last sequence number it used, 0 if nothing was journaled
+    private synchronized long append(List<Change> changes) throws IOException {
+        if(closed) throw new IOException("journal closed");
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(64 * changes.size());
+        DataOutputStream out = new DataOutputStream(frames);
+        long next = seq;
+        for(Change c: changes){
+            if(c.kind==Kind.RELOAD){ snapshotNeeded = true; continue; } // wholesale replacement: only a snapshot can capture it
+            byte[] payload = encode(c, next+1);
+            if(payload==null) continue;
+            out.writeInt(payload.length); out.writeInt(crc(payload)); out.write(payload); next++;
+        }
+        if(next==seq) return 0;
+        queue.add(frames.toByteArray());
+        pending += (int)(next-seq); seq = next;
+        if(durability!=Durability.SYNC){ startWriter(); notifyAll(); }
+        return next;
+    }
+
+    /**
+     * Writes every queued batch with one write and, if {@code force}, one fsync, unless records up to
+     * {@code upTo} are already there. Whoever gets the io lock first commits the whole group.
+     */
+    private void flush(long upTo, boolean force) throws IOException {
+        synchronized(io){
+            if(force? durableSeq >= upTo : writtenSeq >= upTo) return;
+            writeQueued(force);
+        }
+    }
+
+    // caller holds io
+    private void writeQueued(boolean force) throws IOException {
+        List<byte[]> batch; long last;
+        synchronized(this){ batch = new ArrayList<>(queue); queue.clear(); last = seq; }
+        if(!batch.isEmpty()){
+            int size = 0; for(byte[] b: batch) size += b.length;
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            for(byte[] b: batch) buf.put(b);
+            buf.flip();
+            FileChannel ch = channel();
+            while(buf.hasRemaining()) ch.write(buf);
+            writtenSeq = last;
+        }
+        if(force && durableSeq < writtenSeq){ channel().force(false); durableSeq = writtenSeq; }
+    }
+
+    private void startWriter(){ // caller holds this
+        if(writer != null) return;
+        writer = new Thread(this::writeLoop, "library-journal");
+        writer.setDaemon(true); writer.start();
+    }
+
+    // GROUP: wait for the window to fill, then one write + fsync. PERIODIC: write at once, fsync once per window.
+    private void writeLoop(){
+        long lastForce = System.nanoTime(), windowNs = windowMs * 1_000_000L;
+        boolean dirty = false; // written but not yet forced (PERIODIC)
+        while(true){
+            boolean stop;
+            try {
+                synchronized(this){
+                    while(queue.isEmpty() && !closed){
+                        if(!dirty){ wait(); continue; }
+                        long left = windowNs - (System.nanoTime() - lastForce);
+                        if(left <= 0) break;
+                        wait(Math.max(1, left / 1_000_000L));
+                    }
+                    stop = closed;
+                }
+                if(durability==Durability.GROUP && windowMs > 0 && !stop) Thread.sleep(windowMs);
+            } catch(InterruptedException ex){ stop = true; }
+            boolean force = stop || durability==Durability.GROUP || System.nanoTime() - lastForce >= windowNs;
+            try {
+                synchronized(io){ writeQueued(force); }
+                if(force){ lastForce = System.nanoTime(); dirty = false; } else dirty = true;
+            } catch(IOException ex){ System.err.println("Journal write failed: "+ex.getMessage()); snapshotNeeded = true; }
+            if(stop) return;
+        }
+    }
+
+    // book counter updates are implied by borrow/return records and are not journaled separately
+    private static byte[] encode(Change c, long seq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(seq);
+        if(c.kind==Kind.INSERT && c.entity instanceof Book b){ out.writeByte(ADD_BOOK); out.writeUTF(b.id()); out.writeUTF(nz(b.title())); out.writeUTF(nz(b.author())); out.writeInt(b.year()); out.writeInt(b.total()); out.writeInt(b.available()); }
+        else if(c.kind==Kind.INSERT && c.entity instanceof Member m){ out.writeByte(ADD_MEMBER); out.writeUTF(m.id); out.writeUTF(nz(m.name)); }
+        else if(c.kind==Kind.INSERT && c.entity instanceof Loan l){ out.writeByte(BORROW); out.writeUTF(l.loanId); out.writeUTF(l.bookId); out.writeUTF(l.memberId); out.writeLong(l.issueDate); }
+        else if(c.kind==Kind.DELETE && c.entity instanceof Loan l){ out.writeByte(RETURN); out.writeUTF(l.loanId); }
+        else return null;
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private FileChannel channel() throws IOException {
+        if(channel == null) channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return channel;
+    }
+
+    // ---------------- Snapshot & compaction ----------------
+    /**
+     * Sets the live journal aside so that new records start a fresh file, and returns the sequence number the
+     * next snapshot covers. Must run while the store is exclusive, so the snapshot and this sequence agree.
+     */
+    long rotate() throws IOException {
+        synchronized(io){
+            writeQueued(true); // everything up to the cut goes into the file being set aside
+            synchronized(this){ return rotateLocked(); }
+        }
+    }
+
+    private long rotateLocked() throws IOException {
+        if(channel != null){ channel.close(); channel = null; }
+        if(Files.exists(journalFile)){
+            if(Files.exists(rotatedFile)){ // an earlier snapshot failed: keep everything since the last good one
+                try(FileChannel old = FileChannel.open(rotatedFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND); FileChannel cur = FileChannel.open(journalFile, StandardOpenOption.READ)){
+                    cur.transferTo(0, cur.size(), old); old.force(true);
+                }
+                Files.delete(journalFile);
+            } else Files.move(journalFile, rotatedFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        pending = 0; snapshotNeeded = false;
+        return seq;
+    }
+
+    /** Writes a full snapshot covering records up to {@code seq} next to the live file, swaps it in atomically, then drops the rotated journal. */
+    void snapshot(long seq, Collection<Book> books, Collection<Member> members, Collection<Loan> loans) throws IOException {
+        synchronized(snapshotLock){
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName()+".tmp");
+            try {
+                try(FileOutputStream fos = new FileOutputStream(tmp.toFile())){
+                    SnapshotFormat.write(fos, seq, books, members, loans);
+                    fos.getFD().sync();
+                }
+                try { Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); }
+                catch(AtomicMoveNotSupportedException e){ Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING); }
+            } catch(IOException ex){ snapshotNeeded = true; throw ex; } // the rotated journal stays and is folded in next time
+            // records up to seq are now redundant; a crash before this point only leaves them to be skipped
+            Files.deleteIfExists(rotatedFile);
+            migrationPending = false; // the legacy file is left in place but no longer read
+        }
+    }
+
+    /** Flushes and fsyncs whatever is still queued, stops the writer and closes the file. Later appends fail. */
+    void close(){
+        Thread w;
+        synchronized(this){ if(closed) return; closed = true; w = writer; notifyAll(); }
+        if(w != null) try { w.join(10_000); } catch(InterruptedException ex){ Thread.currentThread().interrupt(); }
+        synchronized(io){
+            try { writeQueued(true); } catch(IOException ex){ System.err.println("Journal flush on close failed: "+ex.getMessage()); }
+            if(channel != null){ try { channel.close(); } catch(IOException ignored) {} channel = null; }
+        }
+    }
+
+    private static int crc(byte[] b){ CRC32 c = new CRC32(); c.update(b); return (int)c.getValue(); }
+    private static String nz(String s){ return s==null? "" : s; }
+
+    /** True if s (null counts as empty) can be journaled, i.e. is at most {@link #MAX_FIELD_BYTES} in modified UTF-8. */
+    static boolean fits(String s){
+        if(s==null || s.length() <= MAX_FIELD_BYTES/3) return true; // at most 3 bytes per char
+        long n = 0;
+        for(int i=0; i<s.length(); i++){ char c = s.charAt(i); n += c!=0 && c < 0x80? 1 : c < 0x800? 2 : 3; }
+        return n <= MAX_FIELD_BYTES;
+    }
+}
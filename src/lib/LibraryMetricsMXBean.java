@@ -0,0 +1,33 @@
+package lib;
+
+import javax.management.ConstructorParameters;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}, registered as {@code lib:type=LibraryMetrics}. Public only because JMX
+ * requires it; times are in milliseconds.
+ */
+public interface LibraryMetricsMXBean {
+    List<OperationStats> getOperations();
+    long getEdtStalls();
+    /** Most recent EDT stalls, newest first, each with the EDT stack at the time. */
+    List<String> getRecentStalls();
+    /** Startup phases ("first paint", "data ready") and when each was reached, in ms after JVM start. */
+    Map<String,Long> getStartupMillis();
+    void reset();
+
+    final class OperationStats {
+        private final String operation; private final long count; private final double p50Millis, p99Millis, maxMillis;
+        @ConstructorParameters({"operation", "count", "p50Millis", "p99Millis", "maxMillis"})
+        public OperationStats(String operation, long count, double p50Millis, double p99Millis, double maxMillis){
+            this.operation = operation; this.count = count; this.p50Millis = p50Millis; this.p99Millis = p99Millis; this.maxMillis = maxMillis;
+        }
+        public String getOperation(){ return operation; }
+        public long getCount(){ return count; }
+        public double getP50Millis(){ return p50Millis; }
+        public double getP99Millis(){ return p99Millis; }
+        public double getMaxMillis(){ return maxMillis; }
+        @Override public String toString(){ return String.format("%-15s n=%-8d p50=%.3fms p99=%.3fms max=%.3fms", operation, count, p50Millis, p99Millis, maxMillis); }
+    }
+}
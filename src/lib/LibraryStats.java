@@ -0,0 +1,102 @@
+package lib;
+
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals for the Home dashboard, kept up to date by store events instead of by scanning.
+ *
+ * Titles, copies, members and open loans are counters changed in O(1) per add, borrow and return.
+ * Overdue loans and outstanding fines depend on the clock, so they are computed on a tick, at a whole
+ * minute: open loans are counted per issue day, and within a day by minute of issue in a small Fenwick
+ * tree. At tick time every loan of one issue day is either {@code q} or {@code q-1} whole days old,
+ * depending on whether it was issued before or after the tick's time of day, so a day contributes two
+ * counts and two {@link FinePolicy#fineFor} calls. A tick therefore costs O(overdue issue days x log 1440),
+ * however many books, members or loans there are. Figures are exact for the tick minute and agree with
+ * {@link FineEngine} readings taken at that instant.
+ */
+final class LibraryStats implements LibraryStore.Listener {
+    private static final long DAY_MS = FineEngine.DAY_MS, MINUTE_MS = 60_000;
+    private static final int MINUTES = 1440;
+
+    /** One dashboard reading. */
+    static final class Reading {
+        final long atMs; final long titles, copies, members, openLoans, overdueLoans, finesOutstanding;
+        Reading(long atMs, long titles, long copies, long members, long openLoans, long overdueLoans, long finesOutstanding){
+            this.atMs = atMs; this.titles = titles; this.copies = copies; this.members = members; this.openLoans = openLoans; this.overdueLoans = overdueLoans; this.finesOutstanding = finesOutstanding;
+        }
+        long onShelf(){ return copies - openLoans; }
+    }
+
+    // open loans issued on one (UTC) day; tree[m] counts loans by the minute that ends at or after their issue time
+    private static final class Day {
+        int count; final int[] tree = new int[MINUTES+2];
+        void add(int slot, int d){ count += d; for(int i=slot+1; i<tree.length; i+=i&-i) tree[i] += d; }
+        int upTo(int slot){ int n = 0; for(int i=slot+1; i>0; i-=i&-i) n += tree[i]; return n; }
+    }
+
+    private final LibraryStore store;
+    private final FineEngine fines;
+    private final AtomicLong titles = new AtomicLong(), copies = new AtomicLong(), members = new AtomicLong(), openLoans = new AtomicLong();
+    private final ConcurrentSkipListMap<Long,Day> days = new ConcurrentSkipListMap<>();
+
+    LibraryStats(LibraryStore store, FineEngine fines){ this.store = store; this.fines = fines; rebuild(); }
+
+    // ---------------- Readings ----------------
+    /** Counters now; overdue and fines as of the start of the current minute. */
+    Reading read(long nowMs){
+        long t = nowMs - Math.floorMod(nowMs, MINUTE_MS);
+        FinePolicy policy = fines.policy();
+        long dayT = Math.floorDiv(t, DAY_MS); int minuteT = (int)(Math.floorMod(t, DAY_MS) / MINUTE_MS);
+        long overdue = 0, total = 0;
+        // a loan of issue day k is (dayT-k) or (dayT-k-1) whole days old; only days older than the loan period matter
+        for(Map.Entry<Long,Day> e: days.headMap(dayT - policy.loanDays(), false).entrySet()){
+            long age = dayT - e.getKey(); int early, late;
+            Day d = e.getValue();
+            synchronized(d){ early = d.upTo(minuteT); late = d.count - early; } // issued by the tick's time of day / after it
+            if(age > policy.loanDays()){ overdue += early; total += (long)early * policy.fineFor((int)(age - policy.loanDays())); }
+            if(age-1 > policy.loanDays()){ overdue += late; total += (long)late * policy.fineFor((int)(age - 1 - policy.loanDays())); }
+        }
+        return new Reading(t, titles.get(), copies.get(), members.get(), openLoans.get(), overdue, total);
+    }
+
+    // ---------------- Maintenance ----------------
+    @Override public void storeChanged(List<Change> changes){
+        for(Change c: changes){
+            if(c.kind==Kind.RELOAD){ rebuild(); return; }
+            if(c.kind==Kind.INSERT){
+                if(c.entity instanceof Book b){ titles.incrementAndGet(); copies.addAndGet(b.total()); }
+                else if(c.entity instanceof Member) members.incrementAndGet();
+                else if(c.entity instanceof Loan l) loan(l, 1);
+            } else if(c.kind==Kind.DELETE && c.entity instanceof Loan l) loan(l, -1);
+        }
+    }
+
+    private void loan(Loan l, int d){
+        openLoans.addAndGet(d);
+        long day = Math.floorDiv(l.issueDate, DAY_MS);
+        int slot = (int)((Math.floorMod(l.issueDate, DAY_MS) + MINUTE_MS - 1) / MINUTE_MS); // issued at or before minute 'slot' of its day
+        while(true){
+            Day bucket = days.computeIfAbsent(day, k -> new Day());
+            synchronized(bucket){
+                if(days.get(day) != bucket) continue; // emptied and dropped meanwhile
+                bucket.add(slot, d);
+                if(bucket.count == 0) days.remove(day, bucket);
+                return;
+            }
+        }
+    }
+
+    // RELOAD is delivered while the store is exclusive
+    private void rebuild(){
+        titles.set(0); copies.set(0); members.set(0); openLoans.set(0); days.clear();
+        for(Book b: store.books()){ titles.incrementAndGet(); copies.addAndGet(b.total()); }
+        members.set(store.members().size());
+        for(Loan l: store.loans()) loan(l, 1);
+    }
+}
@@ -0,0 +1,249 @@
+package lib;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory library data with hash indexes, safe to use from several threads at once.
+ *
+ * Primary keys (Book.id, Member.id, Loan.loanId) resolve in O(1). Loans are additionally indexed by
+ * bookId and by memberId; borrow and return update the loan map and both secondary indexes together,
+ * so lookups never see a loan in one index but not the other.
+ *
+ * Circulation is striped: borrow and return lock only the stripe that the book id hashes to, check and
+ * change {@code Book.available} under it and deliver their events before unlocking. Desks working on
+ * different titles therefore rarely share a lock, while two borrows of the same title are serialized and
+ * can never take more copies than exist. Catalog additions take a separate lock and only publish the new
+ * book or member once its INSERT has been delivered, so no listener (the journal in particular) ever sees
+ * a borrow ahead of the book or member it refers to. Queries do not lock.
+ *
+ * Books are kept column-wise in a {@link CompactCatalog} (set {@code -Dlibrary.offHeapTitles=true} to keep
+ * titles outside the heap); the Book objects handed out are its per-row views.
+ *
+ * Every mutation is reported to listeners as fine-grained {@link Change}s, on the mutating thread.
+ * Mutations made between {@link #beginBatch()} and {@link #endBatch()} are delivered together, once, when
+ * the outermost batch ends; a batch holds every stripe until then, so it is exclusive and its events are
+ * never interleaved with another thread's. {@link #cut(Runnable)} uses the same exclusion to take a consistent copy.
+ */
+class LibraryStore {
+    // ---------------- Change events ----------------
+    enum Kind { INSERT, UPDATE, DELETE, RELOAD }
+
+    /** One changed entity (a Book, Member or Loan); RELOAD means everything was replaced and carries no entity. */
+    static final class Change {
+        final Kind kind; final Object entity;
+        Change(Kind kind, Object entity){ this.kind = kind; this.entity = entity; }
+    }
+
+    /** Called on the mutating thread, possibly from several threads at once. */
+    interface Listener { void storeChanged(List<Change> changes); }
+
+    private static final class Batch { int depth; final List<Change> pending = new ArrayList<>(); }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Batch> batch = ThreadLocal.withInitial(Batch::new);
+
+    void addListener(Listener l){ listeners.add(l); }
+    void removeListener(Listener l){ listeners.remove(l); }
+
+    /** Starts (or nests) a batch on this thread; blocks other mutations until the outermost {@link #endBatch()}. */
+    void beginBatch(){ Batch b = batch.get(); if(b.depth++==0) lockAll(); }
+
+    void endBatch(){
+        Batch b = batch.get();
+        if(b.depth==0 || --b.depth>0) return;
+        try {
+            if(b.pending.isEmpty()) return;
+            List<Change> out = new ArrayList<>(b.pending); b.pending.clear();
+            deliver(out);
+        } finally { unlockAll(); }
+    }
+
+    /** Runs several mutations as one batch, so listeners see one combined event list. */
+    void batch(Runnable r){ beginBatch(); try { r.run(); } finally { endBatch(); } }
+
+    private void emit(Kind kind, Object entity){
+        Batch b = batch.get();
+        if(b.depth>0) b.pending.add(new Change(kind, entity));
+        else deliver(List.of(new Change(kind, entity)));
+    }
+
+    private void emit(Kind k1, Object e1, Kind k2, Object e2){
+        Batch b = batch.get();
+        if(b.depth>0){ b.pending.add(new Change(k1, e1)); b.pending.add(new Change(k2, e2)); }
+        else deliver(List.of(new Change(k1, e1), new Change(k2, e2)));
+    }
+
+    private void deliver(List<Change> changes){
+        List<Change> out = Collections.unmodifiableList(changes);
+        for(Listener l: listeners) l.storeChanged(out);
+    }
+
+    // ---------------- Locks ----------------
+    private static final int STRIPES = 64; // power of two
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    { for(int i=0; i<STRIPES; i++) stripes[i] = new ReentrantLock(); }
+    private final ReentrantLock catalogLock = new ReentrantLock(); // book/member insertion, always taken after stripes
+
+    private ReentrantLock stripe(String bookId){ int h = bookId.hashCode(); return stripes[(h ^ (h>>>16)) & (STRIPES-1)]; }
+
+    private void lockAll(){ for(ReentrantLock l: stripes) l.lock(); catalogLock.lock(); }
+    private void unlockAll(){ catalogLock.unlock(); for(int i=STRIPES-1; i>=0; i--) stripes[i].unlock(); }
+
+    // ---------------- Data ----------------
+    private static final class Slot { final Loan loan; final long order; Slot(Loan loan, long order){ this.loan = loan; this.order = order; } }
+
+    private static final boolean OFF_HEAP_TITLES = Boolean.getBoolean("library.offHeapTitles");
+    private volatile CompactCatalog catalog = new CompactCatalog(OFF_HEAP_TITLES); // display order; replaced, never cleared, so old views stay valid
+    private final List<Member> members = new ArrayList<>(); // guarded by itself; display order
+    private final Map<String,Member> memberById = new ConcurrentHashMap<>();
+    private final Map<String,Slot> loanById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long,Loan> loansInOrder = new ConcurrentSkipListMap<>(); // issue order, O(log n) removal
+    private final AtomicLong loanOrder = new AtomicLong();
+    private final Map<String,Set<Loan>> loansByBook = new ConcurrentHashMap<>(), loansByMember = new ConcurrentHashMap<>();
+
+    // ---------------- Queries ----------------
+    /** Copies, so callers may iterate while other threads mutate. */
+    List<Book> books(){ return catalog.views(); }
+    List<Book> books(int from, int count){ return catalog.views(from, count); }
+    int bookCount(){ return catalog.size(); }
+    List<Member> members(){ synchronized(members){ return new ArrayList<>(members); } }
+    Collection<Loan> loans(){ return Collections.unmodifiableCollection(loansInOrder.values()); }
+
+    Book book(String id){ return catalog.find(id); }
+    Member member(String id){ return id==null? null : memberById.get(id); }
+    Loan loan(String loanId){ Slot s = loanId==null? null : loanById.get(loanId); return s==null? null : s.loan; }
+
+    Set<Loan> loansForBook(String bookId){ return view(bookId==null? null : loansByBook.get(bookId)); }
+    Set<Loan> loansForMember(String memberId){ return view(memberId==null? null : loansByMember.get(memberId)); }
+
+    private static Set<Loan> view(Set<Loan> s){ return s==null? Collections.emptySet() : Collections.unmodifiableSet(s); }
+
+    /** A consistent copy of everything, taken while no mutation is in flight; book counters are frozen copies. */
+    static final class Cut {
+        final List<Book> books; final List<Member> members; final List<Loan> loans;
+        Cut(List<Book> books, List<Member> members, List<Loan> loans){ this.books = books; this.members = members; this.loans = loans; }
+    }
+
+    /** Takes a {@link Cut}; {@code whileExclusive} runs before other threads may mutate again (e.g. to rotate the journal at this exact point). */
+    Cut cut(Runnable whileExclusive){
+        lockAll();
+        try {
+            Cut cut = new Cut(catalog.freeze(), members(), new ArrayList<>(loansInOrder.values()));
+            if(whileExclusive!=null) whileExclusive.run();
+            return cut;
+        } finally { unlockAll(); }
+    }
+
+    // ---------------- Mutations ----------------
+    /** Why {@link #addBook} refuses b whatever ids are taken: a missing id or a field the journal cannot hold; null if none. */
+    static String invalid(Book b){
+        if(b.id()==null) return "missing id";
+        if(!LibraryJournal.fits(b.id()) || !LibraryJournal.fits(b.title()) || !LibraryJournal.fits(b.author()) || !CompactCatalog.fits(b)) return "field over "+LibraryJournal.MAX_FIELD_BYTES+" bytes";
+        return null;
+    }
+
+    /** Same for {@link #addMember}. */
+    static String invalid(Member m){
+        if(m.id==null) return "missing id";
+        if(!LibraryJournal.fits(m.id) || !LibraryJournal.fits(m.name)) return "field over "+LibraryJournal.MAX_FIELD_BYTES+" bytes";
+        return null;
+    }
+
+    /** Copies a book into the catalog; returns false if it is {@link #invalid(Book) invalid} or the id is already taken. */
+    boolean addBook(Book b){
+        if(invalid(b)!=null) return false;
+        catalogLock.lock();
+        try {
+            CompactCatalog c = catalog;
+            if(c.find(b.id())!=null) return false;
+            Book row = c.append(b);
+            emit(Kind.INSERT, row);
+            c.publish(row); // borrowable from here on
+            return true;
+        } finally { catalogLock.unlock(); }
+    }
+
+    /** Adds a member; returns false if it is {@link #invalid(Member) invalid} or the id is already taken. */
+    boolean addMember(Member m){
+        if(invalid(m)!=null) return false;
+        catalogLock.lock();
+        try {
+            if(memberById.containsKey(m.id)) return false;
+            synchronized(members){ members.add(m); }
+            emit(Kind.INSERT, m);
+            memberById.put(m.id, m);
+            return true;
+        } finally { catalogLock.unlock(); }
+    }
+
+    /** Records a loan and takes one copy off the shelf; returns false if book/member is unknown, no copy is left or the loan id is taken. */
+    boolean borrow(Loan l){
+        if(l.bookId==null || l.loanId==null) return false;
+        Metrics.Sample timing = Metrics.start(Metrics.Op.BORROW); // includes waiting for the stripe and the listeners
+        ReentrantLock lock = stripe(l.bookId);
+        lock.lock();
+        try {
+            Book b = book(l.bookId);
+            if(b==null || member(l.memberId)==null || b.available()<=0) return false;
+            Slot s = new Slot(l, loanOrder.incrementAndGet());
+            if(loanById.putIfAbsent(l.loanId, s)!=null) return false;
+            b.setAvailable(b.available()-1); index(s);
+            emit(Kind.UPDATE, b, Kind.INSERT, l);
+            return true;
+        } finally { lock.unlock(); Metrics.stop(timing); }
+    }
+
+    /** Closes a loan and puts the copy back; returns the removed loan or null. */
+    Loan returnLoan(String loanId){
+        Slot s = loanId==null? null : loanById.get(loanId);
+        if(s==null) return null;
+        Metrics.Sample timing = Metrics.start(Metrics.Op.RETURN);
+        ReentrantLock lock = stripe(s.loan.bookId);
+        lock.lock();
+        try {
+            if(!loanById.remove(loanId, s)) return null; // returned by another desk meanwhile
+            Loan l = s.loan;
+            loansInOrder.remove(s.order);
+            loansByBook.computeIfPresent(l.bookId, (k, set) -> set.remove(l) && set.isEmpty()? null : set);
+            loansByMember.computeIfPresent(l.memberId, (k, set) -> set.remove(l) && set.isEmpty()? null : set);
+            Book b = book(l.bookId); if(b!=null) b.setAvailable(b.available()+1);
+            if(b!=null) emit(Kind.DELETE, l, Kind.UPDATE, b); else emit(Kind.DELETE, l);
+            return l;
+        } finally { lock.unlock(); Metrics.stop(timing); }
+    }
+
+    /** Replaces all data (e.g. from a snapshot) and rebuilds every index. Counters on books are taken as-is. */
+    void restore(Collection<Book> bs, Collection<Member> ms, Collection<Loan> ls){
+        beginBatch();
+        try {
+            reset();
+            CompactCatalog c = catalog;
+            for(Book b: bs) if(CompactCatalog.fits(b) && c.find(b.id())==null) c.publish(c.append(b));
+            synchronized(members){ for(Member m: ms) if(m.id!=null && memberById.putIfAbsent(m.id, m)==null) members.add(m); }
+            for(Loan l: ls) if(l.loanId!=null && l.bookId!=null && l.memberId!=null){ Slot s = new Slot(l, loanOrder.incrementAndGet()); if(loanById.putIfAbsent(l.loanId, s)==null) index(s); }
+            emit(Kind.RELOAD, null);
+        } finally { endBatch(); }
+    }
+
+    void clear(){ batch(() -> { reset(); emit(Kind.RELOAD, null); }); }
+
+    // only called while every lock is held
+    private void reset(){
+        catalog = new CompactCatalog(OFF_HEAP_TITLES); synchronized(members){ members.clear(); }
+        memberById.clear();
+        loanById.clear(); loansInOrder.clear(); loansByBook.clear(); loansByMember.clear();
+    }
+
+    private void index(Slot s){
+        Loan l = s.loan;
+        loansInOrder.put(s.order, l);
+        loansByBook.computeIfAbsent(l.bookId, k -> ConcurrentHashMap.newKeySet()).add(l);
+        // several stripes can touch one member's set; compute keeps "create set + add" atomic against "remove empty set"
+        loansByMember.compute(l.memberId, (k, set) -> { if(set==null) set = ConcurrentHashMap.newKeySet(); set.add(l); return set; });
+    }
+}
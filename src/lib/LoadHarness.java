@@ -0,0 +1,184 @@
+package lib;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end load run against a full {@link LibraryCore}: store, fine engine, stats, search indexes,
+ * journal, loan history and snapshots, as the application wires them.
+ *
+ * A {@link WorkloadGenerator} library is built in a temporary directory (with one open loan per ten titles,
+ * backdated over six months), then desk threads replay a weighted mix of operations for a warm-up and a
+ * measured period:
+ * <ul>
+ * <li>{@code suggest}: search-box suggestions for a typed prefix, as the pages ask for them;</li>
+ * <li>{@code search}: the first page of full matches, as the HTTP API serves them;</li>
+ * <li>{@code member}: a member's open loans and outstanding fine;</li>
+ * <li>{@code borrow}: a popular title to a heavy borrower (refused when no copy is left);</li>
+ * <li>{@code return}: a loan the desk opened, or else one of the generated (old) loans.</li>
+ * </ul>
+ * The report has throughput and latency percentiles per operation, heap in use after a full GC before and
+ * after the run, peak heap, GC time and the snapshots taken during it. It ends by checking that every
+ * title's available copies plus its open loans equal its total, and exits with status 1 if they do not.
+ *
+ * Usage: {@code java lib.LoadHarness [titles] [threads] [seconds] [mix]}, where mix is like the default
+ * {@code suggest=35,search=15,member=10,borrow=20,return=20}.
+ */
+final class LoadHarness {
+    private enum Op { SUGGEST, SEARCH, MEMBER, BORROW, RETURN }
+    private static final String DEFAULT_MIX = "suggest=35,search=15,member=10,borrow=20,return=20";
+    private static final int MONTHS = 6, PAGE = 50;
+    private static final AtomicLong loanIds = new AtomicLong(); // across runs: a warm-up loan may still be open
+
+    public static void main(String[] args) throws Exception {
+        int titles = args.length>0? Integer.parseInt(args[0]) : 100_000;
+        int threads = args.length>1? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors()*2;
+        int seconds = args.length>2? Integer.parseInt(args[2]) : 20;
+        int[] weights = mix(args.length>3? args[3] : DEFAULT_MIX);
+        int members = Math.max(1, titles/5), openLoans = Math.max(1, titles/10);
+        System.out.printf("titles=%,d members=%,d openLoans=%,d threads=%d seconds=%d cores=%d maxHeap=%,d MB mix=%s%n", titles, members, openLoans, threads, seconds,
+                Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() >> 20, args.length>3? args[3] : DEFAULT_MIX);
+
+        Path dir = Files.createTempDirectory("library-load");
+        long heap0 = usedHeap();
+        long t0 = System.nanoTime();
+        LibraryCore core = new LibraryCore(dir.resolve(LibraryAWT.DATA_FILE_NAME).toString(), dir.resolve(LibraryAWT.LEGACY_DATA_FILE_NAME).toString(),
+                dir.resolve(LibraryAWT.JOURNAL_FILE_NAME).toString(), LibraryAWT.SNAPSHOT_EVERY);
+        WorkloadGenerator gen = new WorkloadGenerator(titles, members, WorkloadGenerator.SKEW, 42);
+        gen.fill(core.store, openLoans, MONTHS, System.currentTimeMillis(), 43);
+        core.snapshot(); core.startJournal();
+        long built = System.nanoTime() - t0, heap1 = usedHeap();
+        int open = core.store.loans().size();
+        System.out.printf("built in %.1f s: %,d open loans, %,d overdue; heap %,d MB = %.0f bytes/title (store, indexes, fines, stats)%n", built/1e9, open,
+                core.fines.overdue(core.fines.now()).size(), (heap1-heap0) >> 20, (heap1-heap0)/(double)titles);
+
+        Queue<String> oldLoans = new ConcurrentLinkedQueue<>();
+        List<String> ids = new ArrayList<>(); for(Loan l: core.store.loans()) ids.add(l.loanId);
+        Collections.shuffle(ids, new Random(44)); oldLoans.addAll(ids);
+
+        int warmup = Math.min(5, Math.max(1, seconds/4));
+        run(core, gen, oldLoans, weights, threads, warmup, null);
+        resetPeaks(); Metrics.reset(); long gc0 = gcMillis(), gcs0 = gcCount();
+        Result r = run(core, gen, oldLoans, weights, threads, seconds, new Result());
+        long gcMs = gcMillis() - gc0, gcs = gcCount() - gcs0, peak = peakHeap();
+
+        System.out.printf("%n%-8s %12s %10s %10s %10s %10s %10s%n", "op", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        for(Op op: Op.values()){
+            Metrics.Histogram h = r.latency[op.ordinal()];
+            long n = h.count(); total += n;
+            if(n==0) continue;
+            System.out.printf("%-8s %,12.0f %10.3f %10.3f %10.3f %10.3f %10.3f%n", op.name().toLowerCase(Locale.ROOT), n/r.seconds, h.millisAt(0.5), h.millisAt(0.9), h.millisAt(0.99), h.millisAt(0.999), h.maxMillis());
+        }
+        System.out.printf("%-8s %,12.0f   (borrows refused for lack of a copy: %,d)%n", "total", total/r.seconds, r.refused.get());
+        for(LibraryMetricsMXBean.OperationStats s: Metrics.snapshot()) if(s.getOperation().equals(Metrics.Op.SAVE.label) && s.getCount()>0)
+            System.out.printf("snapshots during the run: %d, p50 %.0f ms, max %.0f ms (one per %d journal records)%n", s.getCount(), s.getP50Millis(), s.getMaxMillis(), LibraryAWT.SNAPSHOT_EVERY);
+        long heap2 = usedHeap();
+        System.out.printf("heap after GC: %,d MB before, %,d MB after the run; peak %,d MB; GC %d collections, %,d ms (%.1f%% of the run)%n",
+                heap1 >> 20, heap2 >> 20, peak >> 20, gcs, gcMs, 100.0*gcMs/(r.seconds*1000));
+
+        boolean ok = true;
+        for(Book b: core.store.books()) if(b.available()<0 || b.available()+core.store.loansForBook(b.id()).size()!=b.total()){ ok = false; System.out.println("inconsistent: "+b.id()+" available="+b.available()+" total="+b.total()); break; }
+        System.out.println(ok? "copies consistent" : "COPIES INCONSISTENT");
+        core.close();
+        delete(dir);
+        if(!ok) System.exit(1);
+    }
+
+    private static final class Result {
+        final Metrics.Histogram[] latency = new Metrics.Histogram[Op.values().length];
+        final AtomicLong refused = new AtomicLong();
+        double seconds;
+        Result(){ for(int i=0; i<latency.length; i++) latency[i] = new Metrics.Histogram(); }
+    }
+
+    // runs the mix on every desk for the given time; records into r unless it is null (warm-up)
+    private static Result run(LibraryCore core, WorkloadGenerator gen, Queue<String> oldLoans, int[] weights, int threads, int seconds, Result r) throws InterruptedException {
+        int sum = Arrays.stream(weights).sum();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> desks = new ArrayList<>();
+        for(int d=0; d<threads; d++){
+            Thread t = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                ArrayDeque<String> mine = new ArrayDeque<>(); // loans this desk opened and has not returned
+                try { start.await(); } catch(InterruptedException ex){ return; }
+                while(!stop.get()){
+                    Op op = pick(weights, sum, rnd);
+                    long t0 = System.nanoTime();
+                    switch(op){
+                        case SUGGEST -> core.bookIndex.suggest(gen.searchText(rnd), 20, () -> false);
+                        case SEARCH -> core.bookIndex.match(gen.searchText(rnd), 0, PAGE);
+                        case MEMBER -> { String m = WorkloadGenerator.memberId(gen.pickMember(rnd)); core.store.loansForMember(m).size(); core.fines.fineForMember(core.fines.now(), m); }
+                        case BORROW -> {
+                            Loan l = new Loan("H"+loanIds.incrementAndGet(), WorkloadGenerator.bookId(gen.pickBook(rnd)), WorkloadGenerator.memberId(gen.pickMember(rnd)));
+                            if(core.store.borrow(l)) mine.add(l.loanId); else if(r!=null) r.refused.incrementAndGet();
+                        }
+                        case RETURN -> {
+                            String id = mine.isEmpty()? oldLoans.poll() : mine.poll();
+                            if(id!=null) core.store.returnLoan(id);
+                        }
+                    }
+                    if(r!=null) r.latency[op.ordinal()].record(System.nanoTime() - t0);
+                }
+                oldLoans.addAll(mine); // keep the open-loan count level between runs
+            }, "desk-"+d);
+            desks.add(t); t.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds*1000L);
+        stop.set(true);
+        for(Thread t: desks) t.join();
+        if(r!=null) r.seconds = (System.nanoTime()-t0) / 1e9;
+        return r;
+    }
+
+    private static Op pick(int[] weights, int sum, Random rnd){
+        int x = rnd.nextInt(sum);
+        for(Op op: Op.values()){ x -= weights[op.ordinal()]; if(x < 0) return op; }
+        return Op.SUGGEST;
+    }
+
+    private static int[] mix(String spec){
+        int[] w = new int[Op.values().length];
+        for(String part: spec.split(",")){
+            String[] kv = part.trim().split("=");
+            if(kv.length!=2) throw new IllegalArgumentException("mix entries look like borrow=20: "+part);
+            w[Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(kv[1].trim());
+        }
+        if(Arrays.stream(w).sum() <= 0) throw new IllegalArgumentException("mix has no weight");
+        return w;
+    }
+
+    // ---------------- JVM readings ----------------
+    private static long usedHeap(){
+        for(int i=0; i<4; i++){ System.gc(); try { Thread.sleep(50); } catch(InterruptedException ex){ Thread.currentThread().interrupt(); } }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools(){ return ManagementFactory.getMemoryPoolMXBeans().stream().filter(p -> p.getType()==MemoryType.HEAP).collect(Collectors.toList()); }
+    private static void resetPeaks(){ for(MemoryPoolMXBean p: heapPools()) p.resetPeakUsage(); }
+    // sum of per-pool peaks: an upper bound, since the pools do not peak at the same moment
+    private static long peakHeap(){ long n = 0; for(MemoryPoolMXBean p: heapPools()) n += p.getPeakUsage().getUsed(); return n; }
+    private static long gcMillis(){ long n = 0; for(GarbageCollectorMXBean g: ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, g.getCollectionTime()); return n; }
+    private static long gcCount(){ long n = 0; for(GarbageCollectorMXBean g: ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, g.getCollectionCount()); return n; }
+
+    static void delete(Path dir){
+        try(var paths = Files.walk(dir)){ for(Path p: (Iterable<Path>)paths.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p); }
+        catch(IOException ex){ System.err.println("Could not remove "+dir+": "+ex.getMessage()); }
+    }
+}
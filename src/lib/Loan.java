@@ -0,0 +1,23 @@
+package lib;
+
+import java.io.Serializable;
+
+/** One copy of a book lent to a member; immutable. */
+class Loan implements Serializable {
+    private static final long serialVersionUID = 6375700082753861567L;
+
+    final String loanId, bookId, memberId;
+    final long issueDate; // epoch ms when the loan was created
+
+    Loan(String L, String b, String m) {
+        this(L, b, m, System.currentTimeMillis());
+    }
+
+    // helper constructor to set custom issueDate (useful for seeding/testing)
+    Loan(String L, String b, String m, long issueDate) {
+        this.loanId = L;
+        this.bookId = b;
+        this.memberId = m;
+        this.issueDate = issueDate;
+    }
+}
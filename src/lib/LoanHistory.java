@@ -0,0 +1,298 @@
+package lib;
+
+import lib.LibraryStore.Change;
+import lib.LibraryStore.Kind;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Returned loans, kept forever in month partitions, plus running circulation counts.
+ *
+ * Returning a loan removes it from the store; this listener appends it to the partition of the month it was
+ * returned in ({@code loans-YYYY-MM.log} in the history directory), so partitions only ever grow at the end
+ * and a past month never changes again. {@link #compact()} rewrites every past month as a gzip file
+ * ({@code loans-YYYY-MM.gz}), dropping duplicate records, and deletes its log.
+ *
+ * Counts are updated as loans come and go rather than computed from the history: borrows per book and per
+ * member, all-time (history + open loans) and per month of issue, each kept as a {@link Ranking} so that
+ * "top K" walks only K entries. The history part is read once in {@link #open()}; a store RELOAD only
+ * recombines it with the open loans.
+ *
+ * History records are written as they happen but not fsynced (they are statistics, not the store of record).
+ * A crash can therefore lose the last few, or keep a return whose journal record was lost; compaction keeps
+ * one record per loan id.
+ */
+final class LoanHistory implements LibraryStore.Listener {
+    private static final int MAX_RECORD = 1 << 16;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /** One returned loan. */
+    static final class Returned {
+        final String loanId, bookId, memberId; final long issueDate, returnDate;
+        Returned(String loanId, String bookId, String memberId, long issueDate, long returnDate){
+            this.loanId = loanId; this.bookId = bookId; this.memberId = memberId; this.issueDate = issueDate; this.returnDate = returnDate;
+        }
+    }
+
+    record Count(String id, long count){}
+
+    // ---------------- Rankings ----------------
+    /** Counts per id, also kept sorted by count so the top K are the first K entries. */
+    static final class Ranking {
+        private static final Comparator<Count> ORDER = Comparator.comparingLong(Count::count).reversed().thenComparing(Count::id);
+        private final Map<String,Long> counts = new ConcurrentHashMap<>();
+        private final NavigableSet<Count> order = new ConcurrentSkipListSet<>(ORDER);
+
+        void add(String id, long delta){
+            if(id==null || delta==0) return;
+            counts.compute(id, (k, old) -> { // the map bin is locked, so two desks can't interleave on one id
+                long n = (old==null? 0 : old) + delta;
+                if(old!=null) order.remove(new Count(k, old));
+                if(n==0) return null;
+                order.add(new Count(k, n));
+                return n;
+            });
+        }
+
+        long count(String id){ Long n = id==null? null : counts.get(id); return n==null? 0 : n; }
+        int size(){ return counts.size(); }
+
+        List<Count> top(int k){
+            List<Count> out = new ArrayList<>(Math.min(k, 64));
+            for(Iterator<Count> it = order.iterator(); it.hasNext() && out.size() < k; ) out.add(it.next());
+            return out;
+        }
+
+        private void clear(){ counts.clear(); order.clear(); }
+        private void addAll(Ranking r){ r.counts.forEach(this::add); }
+    }
+
+    private final Path dir;
+    // history only (guarded by this) and history + open loans (the ones queries read)
+    private final Ranking pastBooks = new Ranking(), pastMembers = new Ranking(), books = new Ranking(), members = new Ranking();
+    private final Map<YearMonth,Ranking> pastBooksByMonth = new HashMap<>(), pastMembersByMonth = new HashMap<>();
+    private final Map<YearMonth,Ranking> booksByMonth = new ConcurrentHashMap<>(), membersByMonth = new ConcurrentHashMap<>();
+    private final LibraryStore store;
+    private FileChannel channel; // the partition of channelMonth; guarded by this
+    private YearMonth channelMonth;
+    private long records;
+
+    LoanHistory(LibraryStore store, Path dir){ this.store = store; this.dir = dir; }
+
+    // ---------------- Loading ----------------
+    /** Reads the counts of every partition and repairs a torn log tail; call before the listener is added. */
+    synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        compact(); // also finishes a compaction that crashed between writing the gzip and deleting the log
+        pastBooks.clear(); pastMembers.clear(); pastBooksByMonth.clear(); pastMembersByMonth.clear(); records = 0;
+        for(Partition p: partitions()){
+            if(p.gz!=null) read(p.gz, true, this::tally);
+            if(p.log!=null) read(p.log, false, this::tally);
+        }
+        rebuild();
+    }
+
+    private void tally(Returned r){
+        YearMonth m = month(r.issueDate);
+        pastBooks.add(r.bookId, 1); pastMembers.add(r.memberId, 1);
+        pastBooksByMonth.computeIfAbsent(m, k -> new Ranking()).add(r.bookId, 1);
+        pastMembersByMonth.computeIfAbsent(m, k -> new Ranking()).add(r.memberId, 1);
+        records++;
+    }
+
+    // history + whatever is on loan right now; RELOAD is delivered while the store is exclusive
+    private synchronized void rebuild(){
+        books.clear(); members.clear(); booksByMonth.clear(); membersByMonth.clear();
+        books.addAll(pastBooks); members.addAll(pastMembers);
+        pastBooksByMonth.forEach((m, r) -> monthly(booksByMonth, m).addAll(r));
+        pastMembersByMonth.forEach((m, r) -> monthly(membersByMonth, m).addAll(r));
+        for(Loan l: store.loans()) borrowed(l);
+    }
+
+    // ---------------- Queries ----------------
+    /** Most borrowed titles of all time (returned and open loans), most first. O(k). */
+    List<Count> topBooks(int k){ return books.top(k); }
+    /** Most borrowed titles among loans issued in {@code month}. O(k). */
+    List<Count> topBooks(YearMonth month, int k){ Ranking r = booksByMonth.get(month); return r==null? List.of() : r.top(k); }
+    /** Members who borrowed most in {@code month}. O(k). */
+    List<Count> topMembers(YearMonth month, int k){ Ranking r = membersByMonth.get(month); return r==null? List.of() : r.top(k); }
+    List<Count> topMembers(int k){ return members.top(k); }
+
+    long borrowCount(String bookId){ return books.count(bookId); }
+    long memberTotal(String memberId){ return members.count(memberId); }
+    long memberLoans(YearMonth month, String memberId){ Ranking r = membersByMonth.get(month); return r==null? 0 : r.count(memberId); }
+    synchronized long returnedLoans(){ return records; }
+
+    static YearMonth month(long epochMs){ return YearMonth.from(Instant.ofEpochMilli(epochMs).atZone(ZONE)); }
+
+    /** Streams the returned loans of partitions {@code from} to {@code to} (inclusive), oldest partition first. */
+    void scan(YearMonth from, YearMonth to, Consumer<Returned> sink) throws IOException {
+        List<Partition> ps;
+        synchronized(this){ ps = partitions(); if(channel!=null) channel.force(false); }
+        for(Partition p: ps){
+            if(p.month.isBefore(from) || p.month.isAfter(to)) continue;
+            if(p.gz!=null) read(p.gz, true, sink);
+            if(p.log!=null) synchronized(this){ read(p.log, false, sink); } // the open log may be appended to meanwhile
+        }
+    }
+
+    // ---------------- Recording ----------------
+    @Override public void storeChanged(List<Change> changes){
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream frames = null;
+        for(Change c: changes){
+            if(c.kind==Kind.RELOAD){ rebuild(); return; }
+            if(!(c.entity instanceof Loan l)) continue;
+            if(c.kind==Kind.INSERT) borrowed(l);
+            else if(c.kind==Kind.DELETE){
+                try {
+                    if(frames==null) frames = new ByteArrayOutputStream(96);
+                    frame(new DataOutputStream(frames), encode(new Returned(l.loanId, l.bookId, l.memberId, l.issueDate, now)));
+                } catch(IOException ex){ throw new UncheckedIOException(ex); } // in-memory stream
+                synchronized(this){ tally(new Returned(l.loanId, l.bookId, l.memberId, l.issueDate, now)); }
+            }
+        }
+        if(frames!=null) append(frames.toByteArray(), now);
+    }
+
+    private void borrowed(Loan l){
+        YearMonth m = month(l.issueDate);
+        books.add(l.bookId, 1); members.add(l.memberId, 1);
+        monthly(booksByMonth, m).add(l.bookId, 1); monthly(membersByMonth, m).add(l.memberId, 1);
+    }
+
+    private static Ranking monthly(Map<YearMonth,Ranking> byMonth, YearMonth m){ return byMonth.computeIfAbsent(m, k -> new Ranking()); }
+
+    private synchronized void append(byte[] frames, long now){
+        try {
+            YearMonth m = month(now);
+            if(!m.equals(channelMonth)){ // month rolled over: the old log is closed and waits for compact()
+                if(channel!=null){ channel.force(false); channel.close(); }
+                channel = FileChannel.open(dir.resolve(name(m, ".log")), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channelMonth = m;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(frames);
+            while(buf.hasRemaining()) channel.write(buf);
+        } catch(IOException ex){ System.err.println("Loan history write failed: "+ex.getMessage()); }
+    }
+
+    // ---------------- Compaction ----------------
+    /** Rewrites every past month's log as a gzip partition (merged with an existing one, one record per loan id). Returns the months compacted. */
+    int compact() throws IOException {
+        YearMonth current = month(System.currentTimeMillis());
+        List<Partition> ps;
+        synchronized(this){ ps = partitions(); }
+        int done = 0;
+        for(Partition p: ps){
+            if(p.log==null || !p.month.isBefore(current)) continue;
+            synchronized(this){
+                if(p.month.equals(channelMonth)){ channel.close(); channel = null; channelMonth = null; }
+                Map<String,Returned> byLoan = new LinkedHashMap<>();
+                if(p.gz!=null) read(p.gz, true, r -> byLoan.putIfAbsent(r.loanId, r));
+                read(p.log, false, r -> byLoan.putIfAbsent(r.loanId, r));
+                Path gz = dir.resolve(name(p.month, ".gz")), tmp = dir.resolve(name(p.month, ".gz.tmp"));
+                try(FileOutputStream fos = new FileOutputStream(tmp.toFile())){
+                    GZIPOutputStream zip = new GZIPOutputStream(fos, 1<<16);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(zip, 1<<16));
+                    for(Returned r: byLoan.values()) frame(out, encode(r));
+                    out.flush(); zip.finish(); fos.getFD().sync();
+                }
+                try { Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); }
+                catch(AtomicMoveNotSupportedException e){ Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING); }
+                Files.delete(p.log); // a crash before this only leaves records the next compaction drops as duplicates
+                done++;
+            }
+        }
+        return done;
+    }
+
+    /** Forces and closes the open log. */
+    synchronized void close(){
+        if(channel==null) return;
+        try { channel.force(false); channel.close(); } catch(IOException ignored) {}
+        channel = null; channelMonth = null;
+    }
+
+    // ---------------- Files ----------------
+    private static final class Partition { final YearMonth month; Path log, gz; Partition(YearMonth month){ this.month = month; } }
+
+    private static String name(YearMonth m, String ext){ return "loans-"+m+ext; }
+
+    // every month with a log and/or a gzip file, oldest first
+    private List<Partition> partitions() throws IOException {
+        TreeMap<YearMonth,Partition> out = new TreeMap<>();
+        if(!Files.isDirectory(dir)) return new ArrayList<>();
+        try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "loans-*")){
+            for(Path f: ds){
+                String n = f.getFileName().toString();
+                boolean log = n.endsWith(".log"), gz = n.endsWith(".gz");
+                if(!log && !gz) continue;
+                YearMonth m;
+                try { m = YearMonth.parse(n.substring(6, n.lastIndexOf('.'))); } catch(RuntimeException ex){ continue; }
+                Partition p = out.computeIfAbsent(m, Partition::new);
+                if(log) p.log = f; else p.gz = f;
+            }
+        }
+        return new ArrayList<>(out.values());
+    }
+
+    // a log with a torn or corrupt tail is cut back to its last good record (only done for logs, which are appended to)
+    private static void read(Path file, boolean gz, Consumer<Returned> sink) throws IOException {
+        if(gz){
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1<<16), 1<<16))){
+                while(true){
+                    int len; try { len = in.readInt(); } catch(EOFException ex){ return; }
+                    int crc = in.readInt();
+                    if(len <= 0 || len > MAX_RECORD) throw new IOException(file.getFileName()+": corrupt record");
+                    byte[] payload = new byte[len]; in.readFully(payload);
+                    if(crc(payload)!=crc) throw new IOException(file.getFileName()+": checksum mismatch");
+                    sink.accept(decode(payload));
+                }
+            }
+        }
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1<<16));
+            long good = 0, size = ch.size();
+            while(good + 8 <= size){
+                int len = in.readInt(), crc = in.readInt();
+                if(len <= 0 || len > MAX_RECORD || good + 8 + len > size) break;
+                byte[] payload = new byte[len]; in.readFully(payload);
+                if(crc(payload)!=crc) break;
+                sink.accept(decode(payload));
+                good += 8 + len;
+            }
+            if(good < size){ System.err.println("Loan history "+file.getFileName()+": dropping "+(size-good)+" bytes of torn/corrupt tail"); ch.truncate(good); }
+        }
+    }
+
+    private static byte[] encode(Returned r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(r.loanId); out.writeUTF(r.bookId); out.writeUTF(r.memberId); out.writeLong(r.issueDate); out.writeLong(r.returnDate);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Returned decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        return new Returned(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+    }
+
+    private static void frame(DataOutputStream out, byte[] payload) throws IOException { out.writeInt(payload.length); out.writeInt(crc(payload)); out.write(payload); }
+
+    private static int crc(byte[] b){ CRC32 c = new CRC32(); c.update(b); return (int)c.getValue(); }
+}
@@ -0,0 +1,12 @@
+package lib;
+
+import java.io.Serializable;
+
+/** A library member; immutable. */
+class Member implements Serializable {
+    private static final long serialVersionUID = -1719430262818458816L;
+
+    final String id, name;
+
+    Member(String id, String n) { this.id = id; this.name = n; }
+}
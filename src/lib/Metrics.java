@@ -0,0 +1,172 @@
+package lib;
+
+import jdk.jfr.*;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency histograms, one per {@link Op}, plus the EDT stall log of {@link EdtWatchdog}.
+ *
+ * Timing an operation is {@code Metrics.Sample s = Metrics.start(Op.SAVE); ... Metrics.stop(s);}. While a JFR
+ * recording is on (e.g. {@code jcmd <pid> JFR.start}) a sample also carries a JFR event ({@code lib.Operation}),
+ * so every timed operation shows up on its thread without a restart; when JFR is off no event is created.
+ * Histograms are lock-free and striped (log-linear {@link LongAdder} buckets, at most 12.5% relative error), so
+ * desks timing borrows on different stripes do not meet on a shared counter; they are read through the
+ * {@code lib:type=LibraryMetrics} MBean or {@link #snapshot()}.
+ */
+final class Metrics {
+    enum Op {
+        SEARCH("search"), REFRESH_BOOKS("refresh.books"), REFRESH_MEMBERS("refresh.members"), REFRESH_LOANS("refresh.loans"),
+        SAVE("save"), LOAD("load"), BORROW("borrow"), RETURN("return"), IMPORT("import"), CIRCULATION_BATCH("circulation.batch"), HTTP("http");
+        final String label;
+        Op(String label){ this.label = label; }
+    }
+
+    private static final Histogram[] HISTOGRAMS = new Histogram[Op.values().length];
+    static { for(int i=0; i<HISTOGRAMS.length; i++) HISTOGRAMS[i] = new Histogram(); }
+
+    private static final int RECENT_STALLS = 20;
+    private static final AtomicLong stalls = new AtomicLong();
+    private static final Deque<String> recentStalls = new ArrayDeque<>(); // guarded by itself
+
+    private Metrics(){}
+
+    // ---------------- Timing ----------------
+    /** One timing in progress; carries a JFR event only while a recording wants it. */
+    static final class Sample {
+        final Op op; final long startNanos; final OperationEvent event;
+        Sample(Op op, long startNanos, OperationEvent event){ this.op = op; this.startNanos = startNanos; this.event = event; }
+    }
+
+    @Name("lib.Operation") @Label("Library operation") @Category("Library") @StackTrace(false)
+    static final class OperationEvent extends Event {
+        @Label("Operation") String operation;
+    }
+
+    private static final OperationEvent PROBE = new OperationEvent(); // only asked whether lib.Operation is enabled
+
+    @Name("lib.EdtStall") @Label("EDT stall") @Category("Library") @StackTrace(false)
+    static final class StallEvent extends Event {
+        @Label("Blocked") @Timespan(Timespan.MILLISECONDS) long blockedMillis;
+        @Label("EDT stack") String edtStack;
+    }
+
+    static Sample start(Op op){
+        OperationEvent e = null;
+        if(PROBE.isEnabled()){ e = new OperationEvent(); e.begin(); }
+        return new Sample(op, System.nanoTime(), e);
+    }
+
+    static void stop(Sample s){
+        HISTOGRAMS[s.op.ordinal()].record(System.nanoTime() - s.startNanos);
+        OperationEvent e = s.event;
+        if(e!=null && e.shouldCommit()){ e.operation = s.op.label; e.commit(); }
+    }
+
+    /** Records a stall seen by the EDT watchdog. */
+    static void stall(long blockedMillis, String edtStack){
+        stalls.incrementAndGet();
+        synchronized(recentStalls){
+            recentStalls.addFirst(new Date()+" blocked "+blockedMillis+" ms\n"+edtStack);
+            while(recentStalls.size() > RECENT_STALLS) recentStalls.removeLast();
+        }
+        StallEvent e = new StallEvent();
+        if(e.isEnabled()){ e.blockedMillis = blockedMillis; e.edtStack = edtStack; e.commit(); }
+    }
+
+    private static final Map<String,Long> startup = new ConcurrentHashMap<>(); // phase -> ms after JVM start
+
+    /** Records when a startup phase (first paint, data ready) was reached, in ms after JVM start. */
+    static void startup(String phase, long millis){ startup.putIfAbsent(phase, millis); }
+
+    // ---------------- Reading ----------------
+    static List<LibraryMetricsMXBean.OperationStats> snapshot(){
+        List<LibraryMetricsMXBean.OperationStats> out = new ArrayList<>();
+        for(Op op: Op.values()) out.add(HISTOGRAMS[op.ordinal()].stats(op.label));
+        return out;
+    }
+
+    static void reset(){
+        for(Histogram h: HISTOGRAMS) h.reset();
+        stalls.set(0); synchronized(recentStalls){ recentStalls.clear(); }
+    }
+
+    private static boolean registered;
+
+    /** Publishes the MBean on the platform MBean server (once). */
+    static synchronized void registerMBean(){
+        if(registered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new LibraryMetricsMXBean(){
+                public List<OperationStats> getOperations(){ return snapshot(); }
+                public long getEdtStalls(){ return stalls.get(); }
+                public List<String> getRecentStalls(){ synchronized(recentStalls){ return new ArrayList<>(recentStalls); } }
+                public Map<String,Long> getStartupMillis(){ return new TreeMap<>(startup); }
+                public void reset(){ Metrics.reset(); }
+            }, new ObjectName("lib:type=LibraryMetrics"));
+            registered = true;
+        } catch(Exception ex){ System.err.println("Metrics MBean not registered: "+ex.getMessage()); }
+    }
+
+    // ---------------- Histogram ----------------
+    // 8 linear sub-buckets per power of two of nanoseconds (values below 8 ns get their own bucket); also used by LoadHarness
+    static final class Histogram {
+        private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS, BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final AtomicLong max = new AtomicLong();
+        { for(int i=0; i<BUCKETS; i++) counts[i] = new LongAdder(); }
+
+        void record(long nanos){
+            if(nanos < 0) nanos = 0;
+            counts[index(nanos)].increment();
+            for(long m; nanos > (m = max.get()) && !max.compareAndSet(m, nanos); ){} // a plain read unless this is a new maximum
+        }
+
+        static int index(long v){
+            if(v < SUB) return (int)v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            return SUB + (exp - SUB_BITS) * SUB + (int)((v >>> (exp - SUB_BITS)) & (SUB - 1));
+        }
+
+        // highest value that falls into bucket i
+        static long upper(int i){
+            if(i < SUB) return i;
+            int exp = (i - SUB) / SUB + SUB_BITS, sub = (i - SUB) % SUB;
+            return ((long)(SUB + sub) << (exp - SUB_BITS)) + (1L << (exp - SUB_BITS)) - 1;
+        }
+
+        LibraryMetricsMXBean.OperationStats stats(String label){
+            long[] c = new long[BUCKETS]; long n = 0;
+            for(int i=0; i<BUCKETS; i++){ c[i] = counts[i].sum(); n += c[i]; }
+            long mx = max.get();
+            return new LibraryMetricsMXBean.OperationStats(label, n, millis(Math.min(mx, quantile(c, n, 0.50))), millis(Math.min(mx, quantile(c, n, 0.99))), millis(mx));
+        }
+
+        long count(){ long n = 0; for(int i=0; i<BUCKETS; i++) n += counts[i].sum(); return n; }
+
+        /** Upper bound of the q-quantile (within 1/8 of it), in ms. */
+        double millisAt(double q){
+            long[] c = new long[BUCKETS]; long n = 0;
+            for(int i=0; i<BUCKETS; i++){ c[i] = counts[i].sum(); n += c[i]; }
+            return millis(Math.min(max.get(), quantile(c, n, q)));
+        }
+
+        double maxMillis(){ return millis(max.get()); }
+
+        private static long quantile(long[] c, long n, double q){
+            if(n == 0) return 0;
+            long rank = (long)Math.ceil(q * n), seen = 0;
+            for(int i=0; i<c.length; i++){ seen += c[i]; if(seen >= rank) return upper(i); }
+            return upper(c.length - 1);
+        }
+
+        void reset(){ for(LongAdder c: counts) c.reset(); max.set(0); }
+
+        private static double millis(long nanos){ return nanos / 1e6; }
+    }
+}
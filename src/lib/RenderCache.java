@@ -0,0 +1,112 @@
+package lib;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rendered pieces of the card UI, shared by every page.
+ *
+ * Page gradients, card shadows, home-button faces and the letter badges used to be painted from scratch
+ * (new Color/GradientPaint/Font, antialiased shapes) on every repaint of every row. They only depend on
+ * their size and colours, so they are drawn once into an image and blitted afterwards; a new image is made
+ * only when a component is resized. Images live in an LRU bounded by pixel memory ({@link #BUDGET_BYTES}),
+ * and are rendered at the device scale so HiDPI screens stay sharp.
+ *
+ * Fonts are interned here too, so renderers share one instance per family/style/size.
+ * Only used from the EDT, like all painting; nothing is synchronized.
+ */
+final class RenderCache {
+    static final long BUDGET_BYTES = 24L << 20;
+
+    private RenderCache(){}
+
+    // ---------------- Fonts ----------------
+    private static final Map<String,Font> fonts = new HashMap<>();
+
+    static Font font(String family, int style, int size){
+        return fonts.computeIfAbsent(family+'/'+style+'/'+size, k -> new Font(family, style, size));
+    }
+
+    // ---------------- Images ----------------
+    private interface Painter { void paint(Graphics2D g, int w, int h); }
+
+    private static long bytes;
+    private static final LinkedHashMap<Object,BufferedImage> images = new LinkedHashMap<>(64, 0.75f, true); // access order: eldest = least recently drawn
+
+    private record Key(String kind, int w, int h, double scale, Object a, Object b){}
+    private record Colors(Color bg, Color fg){}
+
+    /** Draws the cached image for key at (x,y), rendering it first if needed. */
+    private static void draw(Graphics g, int x, int y, Key key, boolean opaque, Painter painter){
+        if(key.w <= 0 || key.h <= 0) return;
+        BufferedImage img = images.get(key);
+        if(img == null){
+            int pw = (int)Math.ceil(key.w*key.scale), ph = (int)Math.ceil(key.h*key.scale);
+            img = new BufferedImage(pw, ph, opaque? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE); // opaque blits skip blending
+            Graphics2D g2 = img.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.scale(key.scale, key.scale);
+            painter.paint(g2, key.w, key.h);
+            g2.dispose();
+            bytes += cost(img);
+            images.put(key, img);
+            trim();
+        }
+        g.drawImage(img, x, y, key.w, key.h, null);
+    }
+
+    // evicts least recently drawn images until the total fits the budget again; one large gradient can push out many badges
+    private static void trim(){
+        for(var it = images.values().iterator(); bytes > BUDGET_BYTES && images.size() > 1 && it.hasNext(); ){
+            bytes -= cost(it.next()); it.remove();
+        }
+    }
+
+    private static long cost(BufferedImage img){ return 4L * img.getWidth() * img.getHeight(); }
+
+    private static double scale(Graphics g){
+        AffineTransform t = g instanceof Graphics2D g2? g2.getTransform() : null;
+        return t==null? 1 : Math.max(1, Math.round(t.getScaleX()*4)/4.0); // quarter steps, so rounding noise does not make new keys
+    }
+
+    /** Diagonal two-colour gradient filling w x h (page backgrounds). */
+    static void gradient(Graphics g, int w, int h, Color from, Color to){
+        draw(g, 0, 0, new Key("gradient", w, h, scale(g), from, to), true, (g2, cw, ch) -> {
+            g2.setPaint(new GradientPaint(0, 0, from, cw, ch, to)); g2.fillRect(0, 0, cw, ch);
+        });
+    }
+
+    /** Rounded gradient face of a home-page button, with the darker overlay when hovered. */
+    static void buttonFace(Graphics g, int w, int h, Color from, Color to, boolean hover){
+        draw(g, 0, 0, new Key(hover? "button.hover" : "button", w, h, scale(g), from, to), false, (g2, cw, ch) -> {
+            g2.setPaint(new GradientPaint(0, 0, from, cw, ch, to)); g2.fillRoundRect(0, 0, cw, ch, 24, 24);
+            if(hover){ g2.setColor(HOVER_SHADE); g2.fillRoundRect(3, 3, cw-6, ch-6, 24, 24); }
+        });
+    }
+
+    /** White rounded card with its drop shadow, filling w x h. */
+    static void card(Graphics g, int w, int h, Color face, int radius){
+        draw(g, 0, 0, new Key("card", w, h, scale(g), face, radius), false, (g2, cw, ch) -> {
+            g2.setColor(CARD_SHADOW); g2.fillRoundRect(5, 7, cw-10, ch-10, radius, radius);
+            g2.setColor(face); g2.fillRoundRect(0, 0, cw-10, ch-10, radius, radius);
+        });
+    }
+
+    /** Filled circle with a centred letter (the row badges). */
+    static void badge(Graphics g, int x, int y, String letter, int size, Color bg, Color fg){
+        draw(g, x, y, new Key("badge", size, size, scale(g), letter, new Colors(bg, fg)), false, (g2, cw, ch) -> {
+            g2.setColor(bg); g2.fillOval(0, 0, size, size);
+            g2.setColor(BADGE_RIM); g2.drawOval(1, 1, size-2, size-2);
+            g2.setColor(fg); g2.setFont(font("SansSerif", Font.BOLD, size/2));
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(letter, (size-fm.stringWidth(letter))/2, (size-fm.getHeight())/2+fm.getAscent());
+        });
+    }
+
+    private static final Color HOVER_SHADE = new Color(0,0,0,50), CARD_SHADOW = new Color(0,0,0,30), BADGE_RIM = new Color(0,0,0,20);
+}
@@ -0,0 +1,71 @@
+package lib;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * List model backing the virtualized Books/Members/Loans pages.
+ * Rows are held by reference; the JList only asks for the ones it paints.
+ * Single-row add/change/remove fire single-row events so a store change repaints one card, not the page.
+ */
+class RowListModel<T> extends AbstractListModel<T> {
+    private List<T> rows = new ArrayList<>();
+    private Map<T,Integer> positions; // identity -> row, rebuilt lazily after a bulk removal
+
+    @Override public int getSize(){ return rows.size(); }
+    @Override public T getElementAt(int index){ return rows.get(index); }
+
+    List<T> rows(){ return rows; }
+
+    // replace the whole row set (a single event instead of one per row)
+    void setRows(List<T> newRows){
+        int oldSize = rows.size();
+        rows = newRows; positions = null;
+        if(oldSize > 0) fireIntervalRemoved(this, 0, oldSize-1);
+        if(!rows.isEmpty()) fireIntervalAdded(this, 0, rows.size()-1);
+    }
+
+    void add(T row){
+        rows.add(row);
+        if(positions!=null) positions.put(row, rows.size()-1);
+        fireIntervalAdded(this, rows.size()-1, rows.size()-1);
+    }
+
+    void changed(T row){ int i = indexOf(row); if(i>=0) fireContentsChanged(this, i, i); }
+
+    void remove(T row){
+        int i = indexOf(row);
+        if(i<0) return;
+        rows.remove(i);
+        positions.remove(row);
+        for(int j=i; j<rows.size(); j++) positions.put(rows.get(j), j); // only the rows after it move
+        fireIntervalRemoved(this, i, i);
+    }
+
+    // drops every row in the set with one pass over the list; one event per run of adjacent removed rows
+    void removeAll(Set<T> gone){
+        if(gone.isEmpty()) return;
+        List<int[]> runs = new ArrayList<>();
+        int kept = 0;
+        for(int i=0; i<rows.size(); i++){
+            T row = rows.get(i);
+            if(!gone.contains(row)){ rows.set(kept++, row); continue; }
+            int[] last = runs.isEmpty()? null : runs.get(runs.size()-1);
+            if(last!=null && last[1]==i-1) last[1] = i; else runs.add(new int[]{i, i});
+        }
+        if(runs.isEmpty()) return;
+        rows.subList(kept, rows.size()).clear();
+        positions = null; // rebuilt once, on the next lookup
+        for(int r=runs.size()-1; r>=0; r--) fireIntervalRemoved(this, runs.get(r)[0], runs.get(r)[1]); // highest first, so earlier indexes stay valid
+    }
+
+    int indexOf(T row){
+        if(positions==null){ positions = new IdentityHashMap<>(rows.size()*2); for(int i=0; i<rows.size(); i++) positions.put(rows.get(i), i); }
+        Integer i = positions.get(row);
+        return i==null? -1 : i;
+    }
+}
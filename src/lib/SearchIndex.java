@@ -0,0 +1,194 @@
+package lib;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Trigram inverted index over the searchable fields of one entity type.
+ *
+ * Each distinct field value ("term", e.g. a title, an author or an id) is lowercased once when it is
+ * indexed and posted under every trigram it contains. A query of three or more characters only looks
+ * at the terms in its rarest trigram's posting list; shorter queries scan the distinct terms.
+ * Postings are plain int arrays of term ids; a term whose last owner is removed is only marked dead and
+ * the postings are rebuilt once dead terms outnumber live ones.
+ * Any thread may update or query it: {@link LibraryCore} applies store changes on whichever thread mutated the
+ * store (the EDT, HTTP request threads, the import committer, a batch-commit worker), while suggestions run on the
+ * search executor and HTTP searches on request threads. Updates take the write lock and queries the read lock.
+ */
+class SearchIndex<T> {
+    private final class Term {
+        final String text, lower;
+        T owner; Set<T> owners; // a single owner, or a set once the term is shared (e.g. an author)
+        Term(String text){ this.text = text; this.lower = text.toLowerCase(Locale.ROOT); }
+        boolean alive(){ return owner!=null || owners!=null; }
+
+        void addOwner(T e){
+            if(owners!=null) owners.add(e);
+            else if(owner==null) owner = e;
+            else if(owner!=e){ owners = new LinkedHashSet<>(); owners.add(owner); owners.add(e); owner = null; }
+        }
+
+        void removeOwner(T e){
+            if(owner==e) owner = null;
+            else if(owners!=null){ owners.remove(e); if(owners.isEmpty()) owners = null; }
+        }
+
+        void collect(Set<T> out){ if(owners!=null) out.addAll(owners); else if(owner!=null) out.add(owner); }
+    }
+
+    private static final class Posting {
+        int[] ids = new int[4]; int size;
+        void add(int id){ if(size==ids.length) ids = Arrays.copyOf(ids, size*2); ids[size++] = id; }
+    }
+
+    private static final class Entry { final String[] fields; final long ordinal; Entry(String[] f, long o){ fields = f; ordinal = o; } }
+
+    private final List<Term> terms = new ArrayList<>();
+    private final Map<String,Integer> termIds = new HashMap<>();
+    private final Map<Long,Posting> postings = new HashMap<>();
+    private final Map<T,Entry> entries = new IdentityHashMap<>();
+    private long nextOrdinal; // insertion order, used to list matches the way the store does
+    private int deadTerms;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // ---------------- Maintenance ----------------
+    void add(T entity, String... fields){
+        lock.writeLock().lock();
+        try {
+            if(entries.containsKey(entity)) return;
+            entries.put(entity, new Entry(fields, nextOrdinal++));
+            for(String f: fields){
+                if(f==null || f.isEmpty()) continue;
+                Integer id = termIds.get(f);
+                Term t;
+                if(id==null){ t = new Term(f); id = terms.size(); terms.add(t); termIds.put(f, id); post(t, id); }
+                else { t = terms.get(id); if(!t.alive()) deadTerms--; }
+                t.addOwner(entity);
+            }
+        } finally { lock.writeLock().unlock(); }
+    }
+
+    void remove(T entity){
+        lock.writeLock().lock();
+        try {
+            Entry e = entries.remove(entity);
+            if(e==null) return;
+            for(String f: e.fields){
+                Integer id = f==null? null : termIds.get(f);
+                if(id==null) continue;
+                Term t = terms.get(id);
+                if(!t.alive()) continue;
+                t.removeOwner(entity);
+                if(!t.alive()) deadTerms++;
+            }
+            if(deadTerms > 1024 && deadTerms > terms.size()/2) compact();
+        } finally { lock.writeLock().unlock(); }
+    }
+
+    void clear(){
+        lock.writeLock().lock();
+        try { terms.clear(); termIds.clear(); postings.clear(); entries.clear(); nextOrdinal = 0; deadTerms = 0; }
+        finally { lock.writeLock().unlock(); }
+    }
+
+    // a term repeating a trigram posts it twice in a row; readers skip adjacent duplicates
+    private void post(Term t, int id){
+        String s = t.lower;
+        for(int i=0; i+3<=s.length(); i++) postings.computeIfAbsent(gram(s, i), k -> new Posting()).add(id);
+    }
+
+    // drop dead terms and renumber the rest
+    private void compact(){
+        List<Term> live = new ArrayList<>(terms.size()-deadTerms);
+        for(Term t: terms) if(t.alive()) live.add(t);
+        terms.clear(); termIds.clear(); postings.clear(); deadTerms = 0;
+        for(Term t: live){ int id = terms.size(); terms.add(t); termIds.put(t.text, id); post(t, id); }
+    }
+
+    // ---------------- Queries ----------------
+    /** Best {@code limit} matching terms: prefix matches first, then shorter terms, then alphabetical. */
+    List<String> suggest(String query, int limit, BooleanSupplier cancelled){
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if(q.isEmpty() || limit<=0) return Collections.emptyList();
+        Comparator<Term> rank = Comparator.<Term>comparingInt(t -> t.lower.startsWith(q)? 0 : 1).thenComparingInt(t -> t.text.length()).thenComparing(t -> t.text);
+        PriorityQueue<Term> best = new PriorityQueue<>(rank.reversed()); // worst on top, so it can be evicted
+        lock.readLock().lock();
+        try {
+            int[] n = {0};
+            boolean done = forEachCandidate(q, t -> {
+                if((++n[0] & 1023)==0 && cancelled.getAsBoolean()) return false;
+                if(t.lower.contains(q) && (best.size()<limit || rank.compare(t, best.peek())<0)){ best.add(t); if(best.size()>limit) best.poll(); }
+                return true;
+            });
+            if(!done) return Collections.emptyList();
+        } finally { lock.readLock().unlock(); }
+        List<Term> out = new ArrayList<>(best); out.sort(rank);
+        List<String> texts = new ArrayList<>(out.size()); for(Term t: out) texts.add(t.text);
+        return texts;
+    }
+
+    /** Every entity with at least one field containing the query, in insertion order. */
+    List<T> match(String query){
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        Set<T> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+        lock.readLock().lock();
+        try {
+            forEachCandidate(q, t -> { if(t.lower.contains(q)) t.collect(hits); return true; });
+            List<T> out = new ArrayList<>(hits);
+            out.sort(Comparator.comparingLong(e -> entries.get(e).ordinal));
+            return out;
+        } finally { lock.readLock().unlock(); }
+    }
+
+    /** How many entities match, and the ones at positions offset .. offset+limit-1 of {@link #match(String)}. */
+    static final class Page<T> {
+        final int total; final List<T> rows;
+        Page(int total, List<T> rows){ this.total = total; this.rows = rows; }
+    }
+
+    /** One page of {@link #match(String)}: only the ordinals are sorted, and only the page's rows are ordered. */
+    Page<T> match(String query, int offset, int limit){
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        Set<T> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+        lock.readLock().lock();
+        try {
+            forEachCandidate(q, t -> { if(t.lower.contains(q)) t.collect(hits); return true; });
+            if(offset >= hits.size() || limit <= 0) return new Page<>(hits.size(), Collections.emptyList());
+            long[] ords = new long[hits.size()]; int n = 0;
+            for(T e: hits) ords[n++] = entries.get(e).ordinal;
+            Arrays.sort(ords);
+            long from = ords[offset], to = ords[Math.min(n, offset+limit)-1];
+            List<T> out = new ArrayList<>(Math.min(limit, n-offset));
+            for(T e: hits){ long o = entries.get(e).ordinal; if(o >= from && o <= to) out.add(e); }
+            out.sort(Comparator.comparingLong(e -> entries.get(e).ordinal));
+            return new Page<>(n, out);
+        } finally { lock.readLock().unlock(); }
+    }
+
+    private interface TermVisitor<T> { boolean visit(T t); }
+
+    // visits live candidate terms (callers verify with contains): the rarest trigram's postings, or all terms for short queries
+    private boolean forEachCandidate(String q, TermVisitor<Term> v){
+        if(q.length()<3){
+            for(Term t: terms) if(t.alive() && !v.visit(t)) return false;
+            return true;
+        }
+        Posting smallest = null;
+        for(int i=0; i+3<=q.length(); i++){
+            Posting p = postings.get(gram(q, i));
+            if(p==null) return true;
+            if(smallest==null || p.size<smallest.size) smallest = p;
+        }
+        int prev = -1;
+        for(int i=0; i<smallest.size; i++){
+            int id = smallest.ids[i];
+            if(id==prev) continue; prev = id;
+            Term t = terms.get(id);
+            if(t.alive() && !v.visit(t)) return false;
+        }
+        return true;
+    }
+
+    private static long gram(String s, int i){ return ((long)s.charAt(i)<<32) | ((long)s.charAt(i+1)<<16) | s.charAt(i+2); }
+}
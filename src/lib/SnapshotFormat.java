@@ -0,0 +1,133 @@
+package lib;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Versioned binary snapshot of the library ({@code library_data.bin}).
+ *
+ * <pre>
+ * header   int magic 'LIBS', short version, long journalSeq
+ * strings  int count, int[count] offsets (relative to the blob), int blobLength, UTF-8 blob
+ * books    int count, per record: int length, int id, int title, int author, int year, int total, int available
+ * members  int count, per record: int length, int id, int name
+ * loans    int count, per record: int length, int loanId, int bookId, int memberId, long issueDate
+ * </pre>
+ * String fields are indexes into the string table (-1 for null), so a repeated author, or a book id that
+ * also appears on loans, is stored and decoded once and shared on the heap. Every record carries its
+ * length so a reader skips fields added by later versions. The file is read through a memory-mapped
+ * buffer and a string is only decoded the first time a record refers to it.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x4C494253; // "LIBS"
+    static final short VERSION = 1;
+
+    private SnapshotFormat(){}
+
+    // ---------------- Writing ----------------
+    static void write(OutputStream os, long seq, Collection<Book> books, Collection<Member> members, Collection<Loan> loans) throws IOException {
+        StringTable table = new StringTable();
+        for(Book b: books){ table.ref(b.id()); table.ref(b.title()); table.ref(b.author()); }
+        for(Member m: members){ table.ref(m.id); table.ref(m.name); }
+        for(Loan l: loans){ table.ref(l.loanId); table.ref(l.bookId); table.ref(l.memberId); }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        out.writeInt(MAGIC); out.writeShort(VERSION); out.writeLong(seq);
+        table.writeTo(out);
+        out.writeInt(books.size());
+        for(Book b: books){ out.writeInt(24); out.writeInt(table.ref(b.id())); out.writeInt(table.ref(b.title())); out.writeInt(table.ref(b.author())); out.writeInt(b.year()); out.writeInt(b.total()); out.writeInt(b.available()); }
+        out.writeInt(members.size());
+        for(Member m: members){ out.writeInt(8); out.writeInt(table.ref(m.id)); out.writeInt(table.ref(m.name)); }
+        out.writeInt(loans.size());
+        for(Loan l: loans){ out.writeInt(20); out.writeInt(table.ref(l.loanId)); out.writeInt(table.ref(l.bookId)); out.writeInt(table.ref(l.memberId)); out.writeLong(l.issueDate); }
+        out.flush();
+    }
+
+    private static final class StringTable {
+        private final Map<String,Integer> refs = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        private int blobLength;
+
+        int ref(String s){
+            if(s==null) return -1;
+            Integer r = refs.get(s);
+            if(r==null){ r = encoded.size(); refs.put(s, r); byte[] b = s.getBytes(StandardCharsets.UTF_8); encoded.add(b); blobLength += b.length; }
+            return r;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(encoded.size());
+            int off = 0; for(byte[] b: encoded){ out.writeInt(off); off += b.length; }
+            out.writeInt(blobLength);
+            for(byte[] b: encoded) out.write(b);
+        }
+    }
+
+    // ---------------- Reading ----------------
+    /** Reads a snapshot into target and returns the journal sequence number it covers. */
+    static long read(Path file, LibraryJournal.Target target) throws IOException {
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+            if(ch.size() > Integer.MAX_VALUE) throw new IOException("snapshot too large to map: "+ch.size()+" bytes");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try { return read(buf, target); }
+            catch(BufferUnderflowException | IndexOutOfBoundsException ex){ throw new EOFException("truncated snapshot "+file); }
+        }
+    }
+
+    private static long read(ByteBuffer buf, LibraryJournal.Target target) throws IOException {
+        if(buf.getInt()!=MAGIC) throw new IOException("not a library snapshot");
+        short version = buf.getShort();
+        if(version<1 || version>VERSION) throw new IOException("unsupported snapshot version "+version);
+        long seq = buf.getLong();
+
+        int count = buf.getInt(), offsetsAt = buf.position();
+        buf.position(offsetsAt + 4*count);
+        int blobLength = buf.getInt(), blobAt = buf.position();
+        buf.position(blobAt + blobLength);
+        LazyStrings strings = new LazyStrings(buf, count, offsetsAt, blobAt, blobLength);
+
+        int n = buf.getInt(); List<Book> books = new ArrayList<>(n);
+        for(int i=0; i<n; i++){
+            int next = record(buf);
+            Book b = new Book(strings.get(buf.getInt()), strings.get(buf.getInt()), strings.get(buf.getInt()), buf.getInt(), buf.getInt());
+            b.setAvailable(buf.getInt()); books.add(b); buf.position(next);
+        }
+        n = buf.getInt(); List<Member> members = new ArrayList<>(n);
+        for(int i=0; i<n; i++){ int next = record(buf); members.add(new Member(strings.get(buf.getInt()), strings.get(buf.getInt()))); buf.position(next); }
+        n = buf.getInt(); List<Loan> loans = new ArrayList<>(n);
+        for(int i=0; i<n; i++){ int next = record(buf); loans.add(new Loan(strings.get(buf.getInt()), strings.get(buf.getInt()), strings.get(buf.getInt()), buf.getLong())); buf.position(next); }
+
+        target.restore(books, members, loans);
+        return seq;
+    }
+
+    // reads a record length prefix and returns where the next record starts
+    private static int record(ByteBuffer buf){ int len = buf.getInt(); return buf.position() + len; }
+
+    private static final class LazyStrings {
+        private final ByteBuffer buf; private final int count, offsetsAt, blobAt, blobLength;
+        private final String[] decoded;
+
+        LazyStrings(ByteBuffer buf, int count, int offsetsAt, int blobAt, int blobLength){
+            this.buf = buf; this.count = count; this.offsetsAt = offsetsAt; this.blobAt = blobAt; this.blobLength = blobLength; this.decoded = new String[count];
+        }
+
+        String get(int ref){
+            if(ref<0) return null;
+            String s = decoded[ref];
+            if(s==null){
+                int start = buf.getInt(offsetsAt + 4*ref), end = ref+1<count? buf.getInt(offsetsAt + 4*(ref+1)) : blobLength;
+                byte[] bytes = new byte[end-start]; buf.get(blobAt + start, bytes);
+                decoded[ref] = s = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return s;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package lib;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress run for concurrent circulation on one {@link LibraryStore}.
+ *
+ * Phase 1 ("spread") gives every desk thread its own titles and reports borrow+return throughput for
+ * 1, 2, 4, ... threads, after one discarded warm-up step so JIT compilation does not land in the 1-thread baseline.
+ * It runs twice: on a bare store with only the fine engine listening, which shows how the striped store itself
+ * scales, and on a full {@link LibraryCore} with its journal started, as the application runs it. In the core
+ * every borrow and return also appends to the journal (synchronized), updates the loan search index (one write
+ * lock) and, for returns, the loan history, so its curve flattens much earlier even on distinct titles. Ratios
+ * only mean parallel speedup up to the number of cores; steps beyond it are marked. Phase 2 ("hot") lets every
+ * thread fight over a handful of titles with few copies and checks that no title is ever lent out more often
+ * than it has copies: {@code available} never goes negative and {@code available + open loans == total} at the end.
+ *
+ * Usage: {@code java lib.StoreStress [maxThreads] [secondsPerStep]}; exits with status 1 if an invariant broke.
+ */
+final class StoreStress {
+    private static final int MEMBERS = 1000, TITLES_PER_DESK = 256, HOT_TITLES = 4, HOT_COPIES = 3;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length>0? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors()*2;
+        double seconds = args.length>1? Double.parseDouble(args[1]) : 2;
+        System.out.println("cores="+Runtime.getRuntime().availableProcessors()+" maxThreads="+maxThreads+" step="+seconds+"s");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if(cores < 2) System.out.println("only one core: the ratios below show overlapping waits, not parallel scaling");
+        for(boolean core: new boolean[]{false, true}){
+            String what = core? "core " : "store";
+            spread(maxThreads, seconds, core); // warm-up, discarded
+            double base = 0;
+            for(int n=1; n<=maxThreads; n*=2){
+                double opsPerSec = spread(n, seconds, core);
+                if(n==1) base = opsPerSec;
+                System.out.printf("spread %s threads=%-3d %,12.0f ops/s  x%.2f%s%n", what, n, opsPerSec, opsPerSec/base, n > cores? "  (more threads than cores)" : "");
+            }
+        }
+        boolean ok = hot(maxThreads, seconds);
+        System.out.println(ok? "hot: invariants held" : "hot: INVARIANT VIOLATED");
+        if(!ok) System.exit(1);
+    }
+
+    private static LibraryStore newStore(int titles, int copies){
+        LibraryStore store = new LibraryStore();
+        store.addListener(new FineEngine(store, FinePolicy.DEFAULT));
+        fill(store, titles, copies);
+        return store;
+    }
+
+    private static void fill(LibraryStore store, int titles, int copies){
+        store.batch(() -> {
+            for(int i=0; i<titles; i++) store.addBook(new Book("B"+i, "Title "+i, "Author "+(i%97), 2000+i%25, copies));
+            for(int i=0; i<MEMBERS; i++) store.addMember(new Member("M"+i, "Member "+i));
+        });
+    }
+
+    // each desk borrows and returns its own titles only; core: through a journaled LibraryCore in a temporary directory
+    private static double spread(int threads, double seconds, boolean core) throws Exception {
+        TitlePicker own = desk -> "B"+(desk*TITLES_PER_DESK + ThreadLocalRandom.current().nextInt(TITLES_PER_DESK));
+        if(!core) return run(threads, seconds, newStore(threads*TITLES_PER_DESK, 2), own, null);
+        Path dir = Files.createTempDirectory("library-stress");
+        LibraryCore c = new LibraryCore(dir.resolve(LibraryAWT.DATA_FILE_NAME).toString(), dir.resolve(LibraryAWT.LEGACY_DATA_FILE_NAME).toString(),
+                dir.resolve(LibraryAWT.JOURNAL_FILE_NAME).toString(), LibraryAWT.SNAPSHOT_EVERY);
+        try {
+            fill(c.store, threads*TITLES_PER_DESK, 2);
+            c.snapshot(); c.startJournal();
+            return run(threads, seconds, c.store, own, null);
+        } finally { c.close(); LoadHarness.delete(dir); }
+    }
+
+    // every desk fights over the same few titles
+    private static boolean hot(int threads, double seconds) throws InterruptedException {
+        LibraryStore store = newStore(HOT_TITLES, HOT_COPIES);
+        AtomicBoolean violated = new AtomicBoolean();
+        double opsPerSec = run(threads, seconds, store, desk -> "B"+ThreadLocalRandom.current().nextInt(HOT_TITLES), violated);
+        System.out.printf("hot    threads=%-3d %,12.0f ops/s%n", threads, opsPerSec);
+        for(Book b: store.books()){
+            int open = store.loansForBook(b.id()).size();
+            if(b.available()<0 || b.available()+open!=b.total()){ System.out.println(b.id()+": available="+b.available()+" open="+open+" total="+b.total()); violated.set(true); }
+        }
+        return !violated.get();
+    }
+
+    interface TitlePicker { String pick(int desk); }
+
+    private static double run(int threads, double seconds, LibraryStore store, TitlePicker titles, AtomicBoolean violated) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong ops = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> desks = new ArrayList<>();
+        for(int d=0; d<threads; d++){
+            int desk = d;
+            Thread t = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                List<String> mine = new ArrayList<>(); // loans this desk opened and has not returned yet
+                long n = 0, ids = 0;
+                try { start.await(); } catch(InterruptedException ex){ return; }
+                while(!stop.get()){
+                    if(mine.size() < 8 && (mine.isEmpty() || rnd.nextBoolean())){
+                        String bookId = titles.pick(desk), loanId = desk+"-"+(ids++);
+                        if(store.borrow(new Loan(loanId, bookId, "M"+rnd.nextInt(MEMBERS)))){
+                            mine.add(loanId);
+                            if(violated!=null && store.book(bookId).available()<0) violated.set(true);
+                        }
+                    } else if(store.returnLoan(mine.remove(mine.size()-1))==null && violated!=null) violated.set(true); // nobody else returns our loans
+                    n++;
+                }
+                ops.addAndGet(n);
+            }, "desk-"+d);
+            desks.add(t); t.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        Thread.sleep((long)(seconds*1000));
+        stop.set(true);
+        for(Thread t: desks) t.join();
+        return ops.get() / ((System.nanoTime()-t0) / 1e9);
+    }
+}
@@ -0,0 +1,119 @@
+package lib;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Large synthetic libraries shaped like real ones, plus the skewed picks that drive traffic against them.
+ *
+ * Everything that is popular in a real library is Zipf-distributed here (weight of rank k is 1/k^skew):
+ * which titles get borrowed, which members borrow, how many titles each author wrote and which words
+ * titles are made of. Popular titles have more copies. Popularity ranks are shuffled over the ids, so the
+ * hot titles are spread over the store's lock stripes and the catalog order instead of sitting at the front.
+ * Open loans are backdated across {@code months} months with {@link Loan#Loan(String,String,String,long)},
+ * so a good share of them is overdue and fines are non-trivial.
+ *
+ * Generation is deterministic for a given seed; the picks used while replaying traffic take the caller's
+ * random source. Instances are immutable after construction and safe to share between threads.
+ */
+final class WorkloadGenerator {
+    static final double SKEW = 1.0;
+    private static final String[] SYLLABLES = {"ka","lo","mi","ra","ten","vor","sha","bel","dun","ith","mor","qua","zen","pal","ro","sen","tal","um","wy","fer",
+        "gan","hol","jin","nor","pre","sil","tor","vel","an","es","ir","on","ul","dra","ste","bri","cla","fen","gor","lis"};
+    private static final String[] FIRST = {"Aisha","Rohan","Priya","Arjun","Meera","Kabir","Sara","Vikram","Neha","Dev","Anya","Ishaan","Zoya","Kiran","Tara","Omar",
+        "Lena","Marco","Yuki","Chen","Amara","Felix","Nadia","Hugo","Ines","Tomas","Leila","Ravi","Sofia","Jonas","Maya","Eli"};
+    private static final String[] LAST = {"Khan","Verma","Shah","Rao","Iyer","Gupta","Singh","Das","Mehta","Nair","Bose","Patel","Joshi","Kapoor",
+        "Silva","Novak","Tanaka","Okafor","Berg","Costa","Larsen","Moreau","Weber","Hughes","Kowalski","Haddad","Lindqvist","Romero"};
+
+    final int titles, members;
+    private final String[] words, authors;
+    private final int[] bookAtRank, memberAtRank; // popularity rank -> index
+    private final Zipf titleRanks, memberRanks, authorRanks, wordRanks;
+
+    /** A catalog of {@code titles} titles and {@code members} members; about one author per eight titles. */
+    WorkloadGenerator(int titles, int members, double skew, long seed){
+        this.titles = titles; this.members = members;
+        Random rnd = new Random(seed);
+        words = new String[Math.max(500, Math.min(50_000, titles/4))];
+        for(int i=0; i<words.length; i++) words[i] = word(rnd, i);
+        authors = new String[Math.max(1, titles/8)];
+        for(int i=0; i<authors.length; i++) authors[i] = FIRST[rnd.nextInt(FIRST.length)]+" "+(char)('A'+rnd.nextInt(26))+". "+LAST[rnd.nextInt(LAST.length)];
+        bookAtRank = shuffled(titles, rnd); memberAtRank = shuffled(members, rnd);
+        titleRanks = new Zipf(titles, skew); memberRanks = new Zipf(members, skew); authorRanks = new Zipf(authors.length, skew); wordRanks = new Zipf(words.length, skew);
+    }
+
+    static String bookId(int i){ return "B"+pad(i, 7); }
+    static String memberId(int i){ return "M"+pad(i, 6); }
+
+    // ---------------- Building ----------------
+    /**
+     * Adds the catalog, the members and about {@code openLoans} open loans issued over the last {@code months}
+     * months (fewer if popular titles run out of copies) as one store batch.
+     */
+    void fill(LibraryStore store, int openLoans, int months, long nowMs, long seed){
+        Random rnd = new Random(seed);
+        int[] rankOf = new int[titles];
+        for(int r=0; r<titles; r++) rankOf[bookAtRank[r]] = r;
+        store.batch(() -> {
+            for(int i=0; i<titles; i++) store.addBook(book(i, rankOf[i], rnd));
+            for(int i=0; i<members; i++) store.addMember(new Member(memberId(i), FIRST[rnd.nextInt(FIRST.length)]+" "+LAST[rnd.nextInt(LAST.length)]));
+            long span = Math.max(1, months) * 30L * FineEngine.DAY_MS;
+            for(int made=0, tries=0; made<openLoans && tries<openLoans*4; tries++){
+                Loan l = new Loan("L"+pad(tries, 8), bookId(pickBook(rnd)), memberId(pickMember(rnd)), nowMs - (long)(rnd.nextDouble()*span));
+                if(store.borrow(l)) made++;
+            }
+        });
+    }
+
+    private Book book(int i, int rank, Random rnd){
+        StringBuilder t = new StringBuilder();
+        for(int w = 2+rnd.nextInt(4); w>0; w--){ if(t.length()>0) t.append(' '); String s = words[wordRanks.next(rnd)]; t.append(Character.toUpperCase(s.charAt(0))).append(s, 1, s.length()); }
+        int copies = rank < titles/100? 4+rnd.nextInt(5) : rank < titles/10? 2+rnd.nextInt(3) : 1+rnd.nextInt(2); // the top 1% and 10% are stocked deeper
+        return new Book(bookId(i), t.toString(), authors[authorRanks.next(rnd)], 1900+rnd.nextInt(125), copies);
+    }
+
+    // ---------------- Traffic ----------------
+    /** Index of a title, most often a popular one. */
+    int pickBook(Random rnd){ return bookAtRank[titleRanks.next(rnd)]; }
+    /** Index of a member, most often a heavy borrower. */
+    int pickMember(Random rnd){ return memberAtRank[memberRanks.next(rnd)]; }
+
+    /** What someone types into a search box: a common title word or author surname, often only its first letters. */
+    String searchText(Random rnd){
+        String s = rnd.nextInt(4)==0? LAST[rnd.nextInt(LAST.length)] : words[wordRanks.next(rnd)];
+        return rnd.nextBoolean()? s : s.substring(0, Math.min(s.length(), 3+rnd.nextInt(3)));
+    }
+
+    // ---------------- Helpers ----------------
+    // two to four syllables; the index is mixed in so that the vocabulary has no duplicates
+    private static String word(Random rnd, int i){
+        StringBuilder sb = new StringBuilder();
+        for(int n = 2+rnd.nextInt(3); n>0; n--) sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+        for(int v=i; v>0; v/=SYLLABLES.length) sb.append(SYLLABLES[v % SYLLABLES.length].charAt(0));
+        return sb.toString();
+    }
+
+    private static int[] shuffled(int n, Random rnd){
+        int[] a = new int[n];
+        for(int i=0; i<n; i++) a[i] = i;
+        for(int i=n-1; i>0; i--){ int j = rnd.nextInt(i+1); int t = a[i]; a[i] = a[j]; a[j] = t; }
+        return a;
+    }
+
+    private static String pad(int v, int width){ String s = Integer.toString(v); return s.length()>=width? s : "0".repeat(width-s.length())+s; }
+
+    // inverse-CDF sampling over ranks 0..n-1, O(log n) per pick
+    private static final class Zipf {
+        private final double[] cdf;
+        Zipf(int n, double skew){
+            cdf = new double[Math.max(1, n)];
+            double sum = 0;
+            for(int k=0; k<cdf.length; k++){ sum += 1 / Math.pow(k+1, skew); cdf[k] = sum; }
+            for(int k=0; k<cdf.length; k++) cdf[k] /= sum;
+        }
+        int next(Random rnd){
+            int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+            return Math.min(cdf.length-1, i >= 0? i : -i-1);
+        }
+    }
+}